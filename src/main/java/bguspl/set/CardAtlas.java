@@ -0,0 +1,173 @@
+package bguspl.set;
+
+import javax.imageio.ImageIO;
+import java.awt.EventQueue;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static bguspl.set.UserInterfaceSwing.intInBaseToPaddedString;
+
+/**
+ * The card images of the cards/*.png resources. The images are decoded in parallel at startup and converted once to
+ * compatible images scaled to the cell size, so drawing them is a plain copy. They are kept in a cache with a memory
+ * budget (Config.cardImageBudgetBytes): the cards that do not fit are decoded again by a loader thread when they are
+ * drawn, and the empty card is drawn in their place until they are ready.
+ */
+class CardAtlas implements CardImages {
+
+    private final Logger logger;
+    private final Config config;
+    private final CardImageCache cache;
+    private final BufferedImage empty;
+    private final ExecutorService loader; // decodes the cards that are not in the cache
+    private final boolean[] loading; // the cards the loader is decoding, accessed by the event dispatch thread only
+    private IntConsumer loaded;
+
+    CardAtlas(Logger logger, Config config) {
+        this.logger = logger;
+        this.config = config;
+        this.cache = new CardImageCache(config.cardImageBudgetBytes);
+
+        long start = System.nanoTime();
+        long cardBytes = 4L * config.cellWidth * config.cellHeight;
+        int eager = (int) Math.min(config.deckSize, Math.max(1, config.cardImageBudgetBytes / cardBytes));
+        int threads = Math.max(1, Math.min(eager, Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "card-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Future<BufferedImage> emptyImage = pool.submit(() -> load("cards/empty_card.png"));
+            List<Future<BufferedImage>> cards = new ArrayList<>(eager);
+            for (int card = 0; card < eager; card++) {
+                String filename = filename(card);
+                cards.add(pool.submit(() -> load(filename)));
+            }
+            empty = emptyImage.get();
+            for (int card = 0; card < eager; card++)
+                cache.put(card, cards.get(card).get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        logger.info("loaded " + eager + " of " + config.deckSize + " card images (" + cache.usedBytes() / 1024 + " KB) in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms using " + threads + " threads.");
+        if (eager < Math.min(config.deckSize, config.tableSize))
+            logger.warning("the card image budget holds " + eager + " cards, fewer than the " + config.tableSize
+                    + " cells of the table: the cards will be decoded again while playing.");
+
+        loading = new boolean[config.deckSize];
+        loader = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "card-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static String filename(Config config, int card) {
+        return "cards/" + intInBaseToPaddedString(card, config.featureCount, config.featureSize) + ".png";
+    }
+
+    private String filename(int card) {
+        return filename(config, card);
+    }
+
+    /**
+     * @param config - the game configuration.
+     * @return       - true iff there are image files for the cards of the deck.
+     */
+    static boolean available(Config config) {
+        ClassLoader loader = CardAtlas.class.getClassLoader();
+        return config.featureSize < 10 // otherwise the file names of different cards would be the same
+                && loader.getResource(filename(config, 0)) != null
+                && loader.getResource(filename(config, config.deckSize - 1)) != null;
+    }
+
+    /**
+     * Decodes an image resource and converts it to a compatible image of the cell size.
+     */
+    private BufferedImage load(String filename) {
+        URL resource = getClass().getClassLoader().getResource(filename);
+        if (resource == null)
+            throw new RuntimeException(new FileNotFoundException(filename));
+        BufferedImage source;
+        try {
+            source = ImageIO.read(resource);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (source == null)
+            throw new RuntimeException(new IOException("cannot decode " + filename));
+
+        BufferedImage image = CardImages.createCompatibleImage(config.cellWidth, config.cellHeight);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, config.cellWidth, config.cellHeight, null);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    @Override
+    public Image card(int card) {
+        BufferedImage image = cache.get(card);
+        if (image != null) return image;
+        // did not fit in the budget, or was dropped for another card: decode it off the event dispatch thread
+        if (!loading[card]) {
+            loading[card] = true;
+            if (logger.isLoggable(Level.FINE)) logger.fine("decoding card image " + card + " again.");
+            loader.execute(() -> decode(card));
+        }
+        return empty;
+    }
+
+    /**
+     * Decodes a card on the loader thread and tells the listener it is ready, on the event dispatch thread.
+     */
+    private void decode(int card) {
+        try {
+            cache.put(card, load(filename(card)));
+        } catch (RuntimeException e) {
+            logger.severe("cannot decode card image " + card + ": " + e); // stays loading, so it is not tried again
+            return;
+        }
+        EventQueue.invokeLater(() -> {
+            loading[card] = false;
+            if (loaded != null) loaded.accept(card);
+        });
+    }
+
+    @Override
+    public void onLoaded(IntConsumer loaded) {
+        this.loaded = loaded;
+    }
+
+    @Override
+    public Image empty() {
+        return empty;
+    }
+}
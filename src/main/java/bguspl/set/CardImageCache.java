@@ -0,0 +1,71 @@
+package bguspl.set;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of card images, bounded by the memory their pixels take. The most recently added or
+ * used images are kept; the others are dropped once the budget is used up.
+ */
+class CardImageCache {
+
+    private final long budgetBytes;
+    private final LinkedHashMap<Integer, BufferedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+
+    /**
+     * @param budgetBytes - the maximal memory the cached images may take (at least one image is always kept).
+     */
+    CardImageCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * @param image - an image.
+     * @return      - the memory the pixels of the image take (4 bytes per pixel).
+     */
+    static long bytes(BufferedImage image) {
+        return 4L * image.getWidth() * image.getHeight();
+    }
+
+    /**
+     * @param card - a card id.
+     * @return     - the image of the card, or null if it is not in the cache.
+     */
+    synchronized BufferedImage get(int card) {
+        return images.get(card);
+    }
+
+    /**
+     * Adds an image to the cache, dropping the least recently used ones if it does not fit.
+     *
+     * @param card  - a card id.
+     * @param image - the image of the card.
+     */
+    synchronized void put(int card, BufferedImage image) {
+        BufferedImage old = images.put(card, image);
+        if (old != null) usedBytes -= bytes(old);
+        usedBytes += bytes(image);
+        Iterator<Map.Entry<Integer, BufferedImage>> eldest = images.entrySet().iterator();
+        while (usedBytes > budgetBytes && images.size() > 1) {
+            usedBytes -= bytes(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @return - the number of images in the cache.
+     */
+    synchronized int size() {
+        return images.size();
+    }
+
+    /**
+     * @return - the memory the cached images take.
+     */
+    synchronized long usedBytes() {
+        return usedBytes;
+    }
+}
@@ -0,0 +1,48 @@
+package bguspl.set;
+
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.function.IntConsumer;
+
+/**
+ * The images of the cards, at the size of a table cell, ready to be drawn.
+ */
+interface CardImages {
+
+    /**
+     * @param card - a card id.
+     * @return     - the image of the card.
+     */
+    Image card(int card);
+
+    /**
+     * @return - the image of an empty slot.
+     */
+    Image empty();
+
+    /**
+     * Sets what to do when the image of a card becomes ready, for images that are made in the background: until then,
+     * card may return another image (e.g. the empty one). It is called on the event dispatch thread.
+     *
+     * @param loaded - called with the card whose image is ready.
+     */
+    default void onLoaded(IntConsumer loaded) {
+    }
+
+    /**
+     * Creates an image in the format of the screen (so drawing it needs no conversion), or a plain ARGB image when there
+     * is no screen.
+     *
+     * @param width  - the width of the image.
+     * @param height - the height of the image.
+     * @return       - the image.
+     */
+    static BufferedImage createCompatibleImage(int width, int height) {
+        if (GraphicsEnvironment.isHeadless())
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration()
+                .createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+    }
+}
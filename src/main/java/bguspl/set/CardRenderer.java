@@ -0,0 +1,205 @@
+package bguspl.set;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Draws the card images from the features of the cards (see Util.cardToFeatures), for decks that have no image files
+ * (e.g. FeatureSize=4 or FeatureCount=5). The features are drawn as: the number of symbols, their color, their shape,
+ * their shading, and the values of any further features in the corner of the card. The images are drawn when first
+ * needed and kept in a cache that holds the cards of the table and as many more, so the memory stays the same for any
+ * deck size.
+ */
+class CardRenderer implements CardImages {
+
+    private static final Color[] COLORS = {new Color(220, 0, 0), new Color(0, 150, 0), new Color(110, 0, 160)};
+    private static final int MAX_SYMBOLS_PER_ROW = 5;
+    private static final int STRIPE_GAP = 4;
+
+    private final Config config;
+    private final Util util;
+    private final CardImageCache cache;
+    private final BufferedImage empty;
+    private final Color[] colors;
+
+    CardRenderer(Config config, Util util) {
+        this.config = config;
+        this.util = util;
+        this.colors = colors(config.featureSize);
+        this.cache = new CardImageCache(4L * config.cellWidth * config.cellHeight * config.tableSize * 2);
+        this.empty = render(null);
+    }
+
+    @Override
+    public Image card(int card) {
+        BufferedImage image = cache.get(card);
+        if (image == null) {
+            image = render(util.cardToFeatures(card));
+            cache.put(card, image);
+        }
+        return image;
+    }
+
+    @Override
+    public Image empty() {
+        return empty;
+    }
+
+    /**
+     * @param features - the features of a card, or null for an empty slot.
+     * @return         - the image of the card.
+     */
+    private BufferedImage render(int[] features) {
+        int width = config.cellWidth;
+        int height = config.cellHeight;
+        int margin = Math.max(2, Math.min(width, height) / 20);
+        BufferedImage image = CardImages.createCompatibleImage(width, height);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            Shape card = new RoundRectangle2D.Float(margin, margin, width - 2 * margin, height - 2 * margin, 4 * margin, 4 * margin);
+            g.setStroke(new BasicStroke(Math.max(1, margin / 2f)));
+            if (features == null) {
+                g.setColor(new Color(235, 235, 235));
+                g.fill(card);
+                g.setColor(Color.LIGHT_GRAY);
+                g.draw(card);
+                return image;
+            }
+            g.setColor(Color.WHITE);
+            g.fill(card);
+            g.setColor(Color.GRAY);
+            g.draw(card);
+
+            int count = feature(features, 0) + 1;
+            Color color = colors[feature(features, 1)];
+            int shape = feature(features, 2);
+            int shading = feature(features, 3);
+
+            // lay the symbols out in rows, centered on the card
+            int rows = (count + MAX_SYMBOLS_PER_ROW - 1) / MAX_SYMBOLS_PER_ROW;
+            int perRow = (count + rows - 1) / rows;
+            int areaWidth = width - 4 * margin;
+            int areaHeight = height - 6 * margin;
+            int cellWidth = areaWidth / Math.max(3, perRow);
+            int cellHeight = areaHeight / rows;
+            int symbolWidth = cellWidth * 3 / 4;
+            int symbolHeight = Math.min(cellHeight * 4 / 5, symbolWidth * 2);
+            for (int i = 0; i < count; i++) {
+                int row = i / perRow;
+                int inRow = Math.min(perRow, count - row * perRow);
+                int x = (width - inRow * cellWidth) / 2 + (i % perRow) * cellWidth + (cellWidth - symbolWidth) / 2;
+                int y = 3 * margin + row * cellHeight + (cellHeight - symbolHeight) / 2;
+                drawSymbol(g, shape(shape, x, y, symbolWidth, symbolHeight), color, shading);
+            }
+
+            // the features beyond the fourth are written in the corner
+            if (features.length > 4) {
+                StringBuilder extra = new StringBuilder();
+                for (int i = 4; i < features.length; i++)
+                    extra.append(i > 4 ? "-" : "").append(features[i] + 1);
+                g.setFont(new Font("SansSerif", Font.BOLD, Math.max(8, height / 8)));
+                g.setColor(Color.DARK_GRAY);
+                g.drawString(extra.toString(), width - 2 * margin - g.getFontMetrics().stringWidth(extra.toString()),
+                        height - 2 * margin);
+            }
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    private static int feature(int[] features, int index) {
+        return index < features.length ? features[index] : 0;
+    }
+
+    /**
+     * @return - the classic red, green and purple for up to 3 values; otherwise hues spread evenly around the color
+     *           wheel, as the added hues would come close to the classic ones.
+     */
+    private static Color[] colors(int featureSize) {
+        if (featureSize <= COLORS.length) return COLORS;
+        Color[] colors = new Color[featureSize];
+        for (int value = 0; value < featureSize; value++)
+            colors[value] = Color.getHSBColor((float) value / featureSize, 0.85f, 0.75f);
+        return colors;
+    }
+
+    /**
+     * @return - an oval, a diamond, a squiggle, or a regular polygon with as many sides as the value for higher values.
+     */
+    private static Shape shape(int value, int x, int y, int width, int height) {
+        switch (value) {
+            case 0:
+                return new RoundRectangle2D.Float(x, y, width, height, width, width);
+            case 1:
+                return new Polygon(new int[]{x + width / 2, x + width, x + width / 2, x},
+                        new int[]{y, y + height / 2, y + height, y + height / 2}, 4);
+            case 2: {
+                GeneralPath squiggle = new GeneralPath();
+                squiggle.moveTo(x + width * 0.2f, y);
+                squiggle.curveTo(x + width * 1.1f, y - height * 0.05f, x + width * 0.4f, y + height * 0.5f, x + width * 0.9f, y + height * 0.8f);
+                squiggle.curveTo(x + width, y + height * 0.95f, x + width * 0.9f, y + height, x + width * 0.8f, y + height);
+                squiggle.curveTo(x - width * 0.1f, y + height * 1.05f, x + width * 0.6f, y + height * 0.5f, x + width * 0.1f, y + height * 0.2f);
+                squiggle.curveTo(x, y + height * 0.05f, x + width * 0.1f, y, x + width * 0.2f, y);
+                squiggle.closePath();
+                return squiggle;
+            }
+            default: {
+                int sides = value;
+                Polygon polygon = new Polygon();
+                double start = -Math.PI / 2 + (sides % 2 == 0 ? Math.PI / sides : 0);
+                for (int i = 0; i < sides; i++) {
+                    double angle = start + 2 * Math.PI * i / sides;
+                    polygon.addPoint(x + (int) Math.round(width / 2.0 * (1 + Math.cos(angle))),
+                            y + (int) Math.round(height / 2.0 * (1 + Math.sin(angle))));
+                }
+                return polygon;
+            }
+        }
+    }
+
+    /**
+     * Draws a symbol: solid, striped, outlined, or filled with a lighter shade of the color for higher values.
+     */
+    private void drawSymbol(Graphics2D g, Shape symbol, Color color, int shading) {
+        g.setColor(color);
+        switch (shading) {
+            case 0:
+                g.fill(symbol);
+                break;
+            case 1: {
+                Shape clip = g.getClip();
+                Stroke stroke = g.getStroke();
+                g.clip(symbol);
+                g.setStroke(new BasicStroke(1));
+                Rectangle bounds = symbol.getBounds();
+                for (int x = bounds.x; x < bounds.x + bounds.width; x += STRIPE_GAP)
+                    g.drawLine(x, bounds.y, x, bounds.y + bounds.height);
+                g.setStroke(stroke);
+                g.setClip(clip);
+                break;
+            }
+            case 2:
+                break;
+            default: {
+                int alpha = 255 * (shading - 2) / Math.max(1, config.featureSize - 2);
+                g.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(), Math.max(32, Math.min(224, alpha))));
+                g.fill(symbol);
+                g.setColor(color);
+            }
+        }
+        g.draw(symbol);
+    }
+}
@@ -21,6 +21,16 @@ public class Config {
     public final long randomSpinMin;
     public final long randomSpinMax;
 
+    /**
+     * The size in bytes at which the log file is rotated (0 for no rotation)
+     */
+    public final long logFileSizeLimit;
+
+    /**
+     * The number of log files kept when rotating (the current one included)
+     */
+    public final int logFileCount;
+
     /**
      * The number of features on the cards (e.g. shape, color etc.)
      */
@@ -86,6 +96,92 @@ public class Config {
      */
     public final long endGamePauseMillies;
 
+    /**
+     * The number of milliseconds to wait for all the player threads to terminate when the game is shut down
+     */
+    public final long shutdownTimeoutMillis;
+
+    /**
+     * The number of threads that test the players' sets in parallel (0 for the dealer to test them itself)
+     */
+    public final int verifierThreads;
+
+    /**
+     * True to run the player and computer threads as virtual threads (needs java 21 or newer, ignored otherwise)
+     */
+    public final boolean virtualThreads;
+
+    /**
+     * Trace the latency of one of every latencyTraceSampling key presses and sets of each player, from the keyboard
+     * to the screen, and log the percentiles of every stage at the end of the game (0 for no tracing)
+     */
+    public final int latencyTraceSampling;
+
+    /**
+     * The number of computer players played by an out-of-process bot instead of an ai thread (the first ones after
+     * the human players), through a memory mapped file
+     */
+    public final int externalPlayers;
+
+    /**
+     * The memory mapped file shared with the bot of the external players
+     */
+    public final String externalPlayersFile;
+
+    /**
+     * True to start the bundled stand-in bot process for the external players with the game
+     */
+    public final boolean launchExternalBot;
+
+    /**
+     * The tcp port of the server for remote players (0 for no server), and the address it listens on
+     */
+    public final int serverPort;
+    public final String serverHost;
+
+    /**
+     * The number of human players played by remote clients instead of the keyboard (the last ones)
+     */
+    public final int remotePlayers;
+
+    /**
+     * The minimal time (in milliseconds) between two batches of updates the server sends to the remote clients
+     */
+    public final long serverTickMillis;
+
+    /**
+     * The file the user interface calls are recorded to, for watching the game later with UserInterfaceReplay (empty
+     * for no recording)
+     */
+    public final String recordFile;
+
+    /**
+     * The maximal number of key presses per second of each computer player (0 for no limit)
+     */
+    public final double computerKeyPressesPerSecond;
+
+    /**
+     * How computer players choose the keys to press: "random" or "set" (look for a set on the table and play it)
+     */
+    public final String computerStrategy;
+
+    /**
+     * The mean and the standard deviation of the time (in milliseconds) a computer player takes to react to a new table
+     */
+    public final long computerReactionMillis;
+    public final long computerReactionDeviationMillis;
+
+    /**
+     * The maximal time (in microseconds, wall clock) a computer player may spend on a single decision
+     */
+    public final long computerDecisionBudgetMicros;
+
+    /**
+     * What to do with a human key press when the player's key queue is full: "coalesce" (drop it if the same slot is
+     * already queued, otherwise drop the oldest press), "drop-oldest" or "drop-newest"
+     */
+    public final String keyOverflowPolicy;
+
     /**
      * The names of the players to display on the screen
      * Note: if there are more players than names, the remaining players will be called "Player 3", "Player 4", etc.
@@ -132,6 +228,33 @@ public class Config {
      */
     public final int fontSize;
 
+    /**
+     * The maximal number of times per second the window is updated (0 to update it on every change)
+     */
+    public final int uiFramesPerSecond;
+
+    /**
+     * The maximal memory (in bytes) the scaled card images may take
+     */
+    public final long cardImageBudgetBytes;
+
+    /**
+     * How the cards are drawn: "images" from the card image files, "procedural" from their features, or "auto" (the
+     * image files if there are files for the deck, otherwise from the features)
+     */
+    public final String cardRendering;
+
+    /**
+     * How often (in milliseconds) the responsiveness of the swing event dispatch thread is probed (0 for never, the
+     * default: turn it on to diagnose a lagging window, as the probes wake the event dispatch thread up)
+     */
+    public final long edtProbeMillis;
+
+    /**
+     * The event dispatch thread delay (in milliseconds) over which a warning with a stack sample of it is logged
+     */
+    public final long edtLagWarningMillis;
+
     /**
      * The scancodes of the keyboard input data for each player
      * Notes:
@@ -187,6 +310,9 @@ public class Config {
         Level logLevel = Level.parse(properties.getProperty("LogLevel", "ALL"));
         String logFormat = properties.getProperty("LogFormat", "[%1$tT.%1$tL] [%2$-7s] %3$s%n");
         Main.setLoggerLevelAndFormat(logger, logLevel, logFormat);
+        logFileSizeLimit = Long.parseLong(properties.getProperty("LogFileSizeLimit", "10485760"));
+        logFileCount = Math.max(1, Integer.parseInt(properties.getProperty("LogFileCount", "5")));
+        GameLog.of(logger).setRotation(logFileSizeLimit, logFileCount);
 
         // for debugging
         randomSpinMin = Long.parseLong(properties.getProperty("RandomSpinMin", "0"));
@@ -211,6 +337,24 @@ public class Config {
         penaltyFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PenaltyFreezeSeconds", "3")) * 1000.0);
         tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
         endGamePauseMillies = (long) (Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) * 1000.0);
+        shutdownTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("ShutdownTimeoutSeconds", "2")) * 1000.0);
+        verifierThreads = Integer.parseInt(properties.getProperty("VerifierThreads", "0"));
+        virtualThreads = Boolean.parseBoolean(properties.getProperty("VirtualThreads", "false").trim());
+        latencyTraceSampling = Integer.parseInt(properties.getProperty("LatencyTraceSampling", "0"));
+        externalPlayers = Math.min(Integer.parseInt(properties.getProperty("ExternalPlayers", "0")), computerPlayers);
+        externalPlayersFile = properties.getProperty("ExternalPlayersFile", "set-players.shm").trim();
+        launchExternalBot = Boolean.parseBoolean(properties.getProperty("LaunchExternalBot", "false").trim());
+        serverPort = Integer.parseInt(properties.getProperty("ServerPort", "0"));
+        serverHost = properties.getProperty("ServerHost", "localhost").trim();
+        remotePlayers = serverPort > 0 ? Math.min(Integer.parseInt(properties.getProperty("RemotePlayers", "0")), humanPlayers) : 0;
+        serverTickMillis = Long.parseLong(properties.getProperty("ServerTickMillis", "10"));
+        recordFile = properties.getProperty("RecordFile", "").trim();
+        computerKeyPressesPerSecond = Double.parseDouble(properties.getProperty("ComputerKeyPressesPerSecond", "0"));
+        computerStrategy = properties.getProperty("ComputerStrategy", "random").trim().toLowerCase();
+        computerReactionMillis = (long) (Double.parseDouble(properties.getProperty("ComputerReactionSeconds", "1")) * 1000.0);
+        computerReactionDeviationMillis = (long) (Double.parseDouble(properties.getProperty("ComputerReactionDeviationSeconds", "0.25")) * 1000.0);
+        computerDecisionBudgetMicros = Long.parseLong(properties.getProperty("ComputerDecisionBudgetMicros", "500"));
+        keyOverflowPolicy = properties.getProperty("KeyOverflowPolicy", "coalesce").trim().toLowerCase();
 
         // ui settings
         String[] names = properties.getProperty("PlayerNames", "Player 1, Player 2").split(",");
@@ -225,6 +369,11 @@ public class Config {
         playerCellWidth = Integer.parseInt(properties.getProperty("PlayerCellWidth", "300"));
         playerCellHeight = Integer.parseInt(properties.getProperty("PlayerCellHeight", "40"));
         fontSize = Integer.parseInt(properties.getProperty("FontSize", "40"));
+        uiFramesPerSecond = Math.max(0, Integer.parseInt(properties.getProperty("UiFramesPerSecond", "60")));
+        cardImageBudgetBytes = Long.parseLong(properties.getProperty("CardImageBudgetMegabytes", "64")) * 1024 * 1024;
+        cardRendering = properties.getProperty("CardRendering", "auto").trim().toLowerCase();
+        edtProbeMillis = Long.parseLong(properties.getProperty("EdtProbeMillis", "0"));
+        edtLagWarningMillis = Long.parseLong(properties.getProperty("EdtLagWarningMillis", "250"));
 
         // keyboard input data
         playerKeys = new int[players][rows * columns];
@@ -0,0 +1,144 @@
+package bguspl.set;
+
+import bguspl.set.ex.LogHistogram;
+
+import java.awt.EventQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Measures how responsive the event dispatch thread (EDT) is. A monitor thread posts a timestamped probe to the event
+ * queue every Config.edtProbeMillis and records how long it waited to be dispatched; when a probe waits longer than
+ * Config.edtLagWarningMillis, it logs a warning with a stack sample of the EDT, showing what keeps it busy. The user
+ * interface also times its own operations on the EDT (see begin and end). The percentiles are logged when the monitor
+ * stops.
+ */
+class EdtMonitor {
+
+    /**
+     * The timed operations of the user interface.
+     */
+    static final int FRAME = 0;
+    static final int PAINT = 1;
+    static final int TIMER = 2;
+    private static final String[] OPERATIONS = {"frame", "paint", "timer"};
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final int STACK_SAMPLE_DEPTH = 12;
+
+    private final Logger logger;
+    private final long probeMillis;
+    private final long lagWarningNanos;
+    private final LogHistogram dispatchDelays = new LogHistogram();
+    private final LogHistogram[] operations = new LogHistogram[OPERATIONS.length];
+    private final Thread thread;
+    private volatile boolean running;
+    private volatile Thread edt;
+    private volatile long probePosted;
+    private volatile boolean probeDispatched;
+    private long lagWarnings;
+
+    EdtMonitor(Logger logger, Config config) {
+        this.logger = logger;
+        this.probeMillis = config.edtProbeMillis;
+        this.lagWarningNanos = TimeUnit.MILLISECONDS.toNanos(config.edtLagWarningMillis);
+        for (int i = 0; i < operations.length; i++)
+            operations[i] = new LogHistogram();
+        this.thread = new Thread(this::run, "edt-monitor");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * @return - true iff the monitor measures (Config.edtProbeMillis > 0).
+     */
+    boolean isEnabled() {
+        return probeMillis > 0;
+    }
+
+    void start() {
+        if (!isEnabled()) return;
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Stops the monitor and logs the measurements.
+     */
+    void stop() {
+        if (!running) return;
+        running = false;
+        thread.interrupt();
+        report("edt dispatch delay", dispatchDelays);
+        for (int i = 0; i < operations.length; i++)
+            report("edt " + OPERATIONS[i], operations[i]);
+        if (lagWarnings > 0) logger.info("edt lagged over the threshold " + lagWarnings + " times.");
+    }
+
+    /**
+     * @return - the start time of an operation, to pass to end.
+     */
+    long begin() {
+        return running ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time an operation took.
+     *
+     * @param operation - the operation (FRAME, PAINT or TIMER).
+     * @param begin     - the value begin returned when the operation started.
+     */
+    void end(int operation, long begin) {
+        if (begin != 0) operations[operation].record(System.nanoTime() - begin);
+    }
+
+    private void probe() {
+        edt = Thread.currentThread();
+        dispatchDelays.record(System.nanoTime() - probePosted);
+        probeDispatched = true;
+    }
+
+    private void run() {
+        ThreadLogger.logStart(logger, thread.getName());
+        try {
+            while (running) {
+                probeDispatched = false;
+                probePosted = System.nanoTime();
+                EventQueue.invokeLater(this::probe);
+                boolean warned = false;
+                do {
+                    Thread.sleep(probeMillis);
+                    long lag = System.nanoTime() - probePosted;
+                    if (!probeDispatched && !warned && lag >= lagWarningNanos) {
+                        warned = true; // once per probe, however long the lag lasts
+                        lagWarnings++;
+                        logger.warning("event dispatch thread is " + TimeUnit.NANOSECONDS.toMillis(lag) + " ms behind, at:" + stackSample());
+                    }
+                } while (!probeDispatched && running);
+            }
+        } catch (InterruptedException ignored) {
+        } finally {
+            ThreadLogger.logStop(logger, thread.getName());
+        }
+    }
+
+    private String stackSample() {
+        Thread edt = this.edt;
+        if (edt == null) return " (not started yet)";
+        StackTraceElement[] stack = edt.getStackTrace();
+        StringBuilder sample = new StringBuilder();
+        for (int i = 0; i < Math.min(stack.length, STACK_SAMPLE_DEPTH); i++)
+            sample.append(System.lineSeparator()).append("    at ").append(stack[i]);
+        if (stack.length > STACK_SAMPLE_DEPTH) sample.append(System.lineSeparator()).append("    ...");
+        return sample.toString();
+    }
+
+    private void report(String name, LogHistogram histogram) {
+        if (histogram.count() == 0) return;
+        StringBuilder line = new StringBuilder(name).append(": samples=").append(histogram.count());
+        for (double percentile : PERCENTILES)
+            line.append(" p").append(percentile == (long) percentile ? String.valueOf((long) percentile) : String.valueOf(percentile))
+                    .append('=').append(TimeUnit.NANOSECONDS.toMicros(histogram.percentile(percentile)));
+        line.append(" max=").append(TimeUnit.NANOSECONDS.toMicros(histogram.max())).append(" (microseconds)");
+        logger.info(line.toString());
+    }
+}
@@ -0,0 +1,386 @@
+package bguspl.set;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Asynchronous logging: the game threads put log events in a preallocated ring and a single background thread
+ * formats them and writes them to the log file in batches, rotating it when it grows too large.
+ * An event is a message template with up to MAX_ARGS numeric arguments (each "{}" in the template is replaced by the
+ * next argument), so logging from the hot paths does not build strings at all. Messages logged through the
+ * java.util.logging Logger reach the same ring through the Handler of the log (see handler).
+ * When the ring is full, events are dropped (and counted) rather than slowing the game down.
+ */
+public class GameLog {
+
+    public static final String DEFAULT_FORMAT = "[%1$tT.%1$tL] [%2$-7s] %3$s%n";
+
+    private static final int CAPACITY = 8192; // must be a power of 2
+    private static final int MAX_ARGS = 4;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final long FLUSH_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * A log event, reused once the writer thread handled it.
+     */
+    private static final class Event {
+        volatile long sequence = -1; // the sequence of the event in this slot once it is published
+        Level level;
+        long millis;
+        String text;
+        final long[] args = new long[MAX_ARGS];
+        int argCount;
+    }
+
+    private final Logger logger;
+    private final Event[] ring;
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed;
+    private volatile long written; // the events before it are in the file
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Thread writer;
+    private volatile boolean writerSleeping;
+    private volatile String format = DEFAULT_FORMAT;
+
+    private final Path path;
+    private volatile long rotateBytes;
+    private volatile int rotateCount = 1;
+
+    private GameLog(Logger logger, Path path) {
+        this(logger, path, CAPACITY);
+    }
+
+    /**
+     * Creates a log without starting the writer thread (see startWriter).
+     *
+     * @param logger   - the logger whose level decides what is logged.
+     * @param path     - the log file, or null to log synchronously to the logger.
+     * @param capacity - the number of events in the ring, a power of 2.
+     */
+    GameLog(Logger logger, Path path, int capacity) {
+        this.logger = logger;
+        this.path = path;
+        if (path == null) { // synchronous: events are formatted and logged by the caller
+            this.ring = null;
+            this.writer = null;
+            return;
+        }
+        this.ring = new Event[capacity];
+        for (int i = 0; i < capacity; i++)
+            ring[i] = new Event();
+        this.writer = new Thread(this::write, "game-log");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Starts logging to a file in the background, and sends the messages of the logger there.
+     *
+     * @param logger - the logger whose messages go to the file.
+     * @param path   - the log file.
+     * @return       - the log.
+     */
+    public static GameLog start(Logger logger, Path path) {
+        GameLog log = new GameLog(logger, path);
+        logger.addHandler(log.new LogHandler());
+        log.startWriter();
+        return log;
+    }
+
+    void startWriter() {
+        writer.start();
+    }
+
+    /**
+     * @param logger - a logger.
+     * @return       - the log the logger's messages are sent to, or a synchronous log that sends the events to the
+     *                 logger if there is none (e.g. in tests).
+     */
+    public static GameLog of(Logger logger) {
+        Handler[] handlers = logger.getHandlers();
+        if (handlers != null)
+            for (Handler handler : handlers)
+                if (handler instanceof LogHandler) return ((LogHandler) handler).log();
+        return new GameLog(logger, null);
+    }
+
+    /**
+     * Rotates the log file when it grows over maxBytes, keeping up to count files (the file itself, then .1, .2...).
+     *
+     * @param maxBytes - the size of a log file (0 for no rotation).
+     * @param count    - the number of files to keep.
+     */
+    public void setRotation(long maxBytes, int count) {
+        this.rotateBytes = maxBytes;
+        this.rotateCount = Math.max(1, count);
+    }
+
+    /**
+     * @param level - a log level.
+     * @return      - true iff events of this level are logged (check it before preparing the arguments).
+     */
+    public boolean isLoggable(Level level) {
+        return logger.isLoggable(level);
+    }
+
+    public void log(Level level, String template) {
+        if (isLoggable(level)) publish(level, template, 0, 0, 0, 0, 0);
+    }
+
+    public void log(Level level, String template, long arg) {
+        if (isLoggable(level)) publish(level, template, 1, arg, 0, 0, 0);
+    }
+
+    public void log(Level level, String template, long arg1, long arg2) {
+        if (isLoggable(level)) publish(level, template, 2, arg1, arg2, 0, 0);
+    }
+
+    public void log(Level level, String template, long arg1, long arg2, long arg3) {
+        if (isLoggable(level)) publish(level, template, 3, arg1, arg2, arg3, 0);
+    }
+
+    private void publish(Level level, String text, int argCount, long arg1, long arg2, long arg3, long arg4) {
+        if (ring == null) {
+            StringBuilder message = new StringBuilder();
+            appendMessage(message, text, argCount, new long[]{arg1, arg2, arg3, arg4});
+            logger.log(level, message.toString());
+            return;
+        }
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed >= ring.length) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        Event event = ring[(int) (sequence & (ring.length - 1))];
+        event.level = level;
+        event.millis = System.currentTimeMillis();
+        event.text = text;
+        event.argCount = argCount;
+        event.args[0] = arg1;
+        event.args[1] = arg2;
+        event.args[2] = arg3;
+        event.args[3] = arg4;
+        event.sequence = sequence; // publishes the event to the writer
+        if (writerSleeping) {
+            writerSleeping = false;
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Waits until the events logged so far are written to the file.
+     */
+    public void flush() {
+        if (ring == null) return;
+        long target = claimed.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FLUSH_TIMEOUT_MILLIS);
+        while (written < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * The main loop of the writer thread.
+     */
+    private void write() {
+        StringBuilder line = new StringBuilder(256);
+        ByteBuffer out = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        FileChannel file = null;
+        try {
+            file = open();
+            long next = 0;
+            while (true) {
+                Event event = ring[(int) (next & (ring.length - 1))];
+                if (event.sequence != next) { // nothing to do: write the batch and sleep
+                    writeBatch(file, out);
+                    file = rotateIfNeeded(file);
+                    consumed = next;
+                    written = next;
+                    writerSleeping = true;
+                    if (event.sequence != next) LockSupport.park(this); // the next event wakes the writer up
+                    writerSleeping = false;
+                    continue;
+                }
+                line.setLength(0);
+                format(line, event);
+                Level level = event.level;
+                event.text = null;
+                consumed = ++next; // the slot may be reused now
+                long lost = dropped.get();
+                if (lost > 0 && dropped.compareAndSet(lost, 0)) {
+                    format(line, System.currentTimeMillis(), Level.WARNING, "dropped " + lost + " log events (log ring full)");
+                }
+                if (out.remaining() < line.length() * 3) writeBatch(file, out);
+                encode(line, out, file);
+                if (level.intValue() >= Level.SEVERE.intValue() && out.position() > WRITE_BUFFER_SIZE / 2) writeBatch(file, out);
+            }
+        } catch (IOException e) {
+            System.err.println("cannot write the log file " + path + ": " + e);
+        } finally {
+            if (file != null) try { file.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    private FileChannel open() throws IOException {
+        File parent = path.toAbsolutePath().getParent().toFile();
+        //noinspection ResultOfMethodCallIgnored
+        parent.mkdirs();
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private FileChannel rotateIfNeeded(FileChannel file) throws IOException {
+        long limit = rotateBytes;
+        if (limit <= 0 || file.size() < limit) return file;
+        file.close();
+        int count = rotateCount;
+        Files.deleteIfExists(rotated(count - 1));
+        for (int i = count - 2; i >= 0; i--) {
+            Path from = i == 0 ? path : rotated(i);
+            if (count > 1 && Files.exists(from)) Files.move(from, rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (count == 1) Files.deleteIfExists(path);
+        return open();
+    }
+
+    private Path rotated(int index) {
+        return index == 0 ? path : Paths.get(path.toString() + "." + index);
+    }
+
+    private static void writeBatch(FileChannel file, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining())
+            file.write(out);
+        out.clear();
+    }
+
+    private void format(StringBuilder line, Event event) {
+        if (event.argCount == 0) {
+            format(line, event.millis, event.level, event.text);
+            return;
+        }
+        StringBuilder message = new StringBuilder(event.text.length() + 16 * event.argCount);
+        appendMessage(message, event.text, event.argCount, event.args);
+        format(line, event.millis, event.level, message);
+    }
+
+    /**
+     * Formats a log line with the configured format: the default one without allocating, others with String.format.
+     */
+    private void format(StringBuilder line, long millis, Level level, CharSequence message) {
+        String format = this.format;
+        if (!DEFAULT_FORMAT.equals(format)) {
+            line.append(String.format(format, new Date(millis), level.getLocalizedName(), message.toString()));
+            return;
+        }
+        long local = millis + TimeZone.getDefault().getOffset(millis);
+        long dayMillis = Math.floorMod(local, TimeUnit.DAYS.toMillis(1));
+        line.append('[');
+        twoDigits(line, dayMillis / 3600000);
+        line.append(':');
+        twoDigits(line, dayMillis / 60000 % 60);
+        line.append(':');
+        twoDigits(line, dayMillis / 1000 % 60);
+        line.append('.');
+        long fraction = dayMillis % 1000;
+        if (fraction < 100) line.append('0');
+        twoDigits(line, fraction);
+        line.append("] [");
+        String name = level.getLocalizedName();
+        line.append(name);
+        for (int i = name.length(); i < 7; i++)
+            line.append(' ');
+        line.append("] ").append(message).append(System.lineSeparator());
+    }
+
+    private static void twoDigits(StringBuilder line, long value) {
+        if (value < 10) line.append('0');
+        line.append(value);
+    }
+
+    private static void appendMessage(StringBuilder message, String template, int argCount, long[] args) {
+        int arg = 0;
+        for (int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c == '{' && i + 1 < template.length() && template.charAt(i + 1) == '}' && arg < argCount) {
+                message.append(args[arg++]);
+                i++;
+            } else {
+                message.append(c);
+            }
+        }
+    }
+
+    /**
+     * Encodes a line as utf-8 into the write buffer, writing the buffer to the file when it fills up.
+     */
+    private static void encode(StringBuilder line, ByteBuffer out, FileChannel file) throws IOException {
+        for (int i = 0; i < line.length(); i++) {
+            if (out.remaining() < 4) writeBatch(file, out);
+            char c = line.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else {
+                int end = Character.isHighSurrogate(c) && i + 1 < line.length() ? i + 2 : i + 1;
+                out.put(line.substring(i, end).getBytes(StandardCharsets.UTF_8));
+                i = end - 1;
+            }
+        }
+    }
+
+    /**
+     * Sends the messages of a java.util.logging Logger to the log.
+     */
+    public final class LogHandler extends Handler {
+
+        GameLog log() {
+            return GameLog.this;
+        }
+
+        /**
+         * @param format - the format of the log lines, see Config.LogFormat.
+         */
+        public void setFormat(String format) {
+            GameLog.this.format = format;
+        }
+
+        @Override
+        public void publish(LogRecord record) {
+            if (!isLoggable(record)) return;
+            String message = record.getParameters() == null || record.getParameters().length == 0
+                    ? record.getMessage() : new java.util.logging.SimpleFormatter().formatMessage(record);
+            if (record.getThrown() != null) message = message + " " + record.getThrown();
+            GameLog.this.publish(record.getLevel(), message, 0, 0, 0, 0, 0);
+        }
+
+        @Override
+        public void flush() {
+            GameLog.this.flush();
+        }
+
+        @Override
+        public void close() {
+            GameLog.this.flush();
+        }
+    }
+}
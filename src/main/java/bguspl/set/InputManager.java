@@ -5,6 +5,7 @@ import bguspl.set.ex.Player;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.util.Arrays;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -16,11 +17,11 @@ class InputManager extends KeyAdapter {
     private final Player[] players;
     int[] keyMap = new int[MAX_KEY_CODE + 1];
     int[] keyToSlot = new int[MAX_KEY_CODE + 1];
-    private final Logger logger;
+    private final GameLog log;
 
     public InputManager(Logger logger, Config config, Player[] players) {
         this.players = players;
-        this.logger = logger;
+        this.log = GameLog.of(logger);
 
         // initialize the keys
         for (int player = 0; player < config.players; ++player)
@@ -41,10 +42,12 @@ class InputManager extends KeyAdapter {
     public void keyPressed(KeyEvent e) {
         // dispatch the key event to the player according to the key map
         int keyCode = e.getKeyCode();
+        if (keyCode >= keyMap.length) return;
         int player = keyMap[keyCode] - 1;
-        if (player >= 0){
-            logger.severe("key " + keyCode + " was pressed by player " + (player + 1));
-            players[player].keyPressed(keyToSlot[keyCode]);
+        if (player < 0 || player >= players.length || players[player] == null) return; // e.g. a replay has no players
+        if (!players[player].isRemote()) { // remote players get their keys from the server
+            log.log(Level.FINEST, "key {} was pressed by player {}", keyCode, player + 1);
+            players[player].offerKey(keyToSlot[keyCode], e.getWhen()); // never blocks the event dispatch thread
         }
     }
 }
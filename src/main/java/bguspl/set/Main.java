@@ -2,10 +2,11 @@ package bguspl.set;
 
 import bguspl.set.ex.Dealer;
 import bguspl.set.ex.Player;
+import bguspl.set.ex.RemotePlayerServer;
 import bguspl.set.ex.Table;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -48,14 +49,26 @@ public class Main {
         Player[] players = new Player[config.players];
         UserInterface ui = null;
         try {
-            ui = new UserInterfaceSwing(logger, config, players);
+            ui = new UserInterfaceSwing(logger, config, util, players);
         } catch (UnsupportedOperationException | IllegalArgumentException e) {
             logger.severe("error creating swing user interface: " + e.getMessage());
             logger.severe("will try to run without user interface");
             if (config.humanPlayers > 0)
                 logger.severe("warning: running with human players with no user interface");
         }
-        ui = new UserInterfaceDecorator(logger, util, ui);
+        RemotePlayerServer server = null;
+        if (config.serverPort > 0) try {
+            server = new RemotePlayerServer(logger, config, players);
+        } catch (IOException e) {
+            logger.severe("cannot open the server for remote players: " + e);
+        }
+        UserInterface recorder = null;
+        if (!config.recordFile.isEmpty()) try {
+            recorder = new UserInterfaceRecorder(logger, config, Paths.get(config.recordFile));
+        } catch (IOException e) {
+            logger.severe("cannot record the user interface: " + e);
+        }
+        ui = new UserInterfaceDecorator(logger, util, UserInterfaceComposite.of(ui, server, recorder));
 
         Env env = new Env(logger, config, ui, util);
 
@@ -64,6 +77,11 @@ public class Main {
         dealer = new Dealer(env, table, players);
         for (int i = 0; i < players.length; i++)
             players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
+        if (server != null) try {
+            server.start();
+        } catch (IOException e) {
+            logger.severe("cannot start the server for remote players: " + e);
+        }
 
         // start the dealer thread
         ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", logger);
@@ -87,34 +105,29 @@ public class Main {
 
         //just to make our log file nicer :)
         SimpleDateFormat format = new SimpleDateFormat("M-d_HH-mm-ss");
-        FileHandler handler;
-        try {
-            //noinspection ResultOfMethodCallIgnored
-            new File("./logs/").mkdirs();
-            handler = new FileHandler("./logs/" + format.format(Calendar.getInstance().getTime()) + ".log");
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-
         java.util.logging.Logger logger = java.util.logging.Logger.getLogger("SetGameLogger");
         logger.setUseParentHandlers(false);
-        logger.addHandler(handler);
-        setLoggerLevelAndFormat(logger, Level.ALL, "[%1$tT.%1$tL] [%2$-7s] %3$s%n");
+        // the log file is written by a background thread so that logging does not slow the game threads down
+        GameLog.start(logger, Paths.get("./logs/" + format.format(Calendar.getInstance().getTime()) + ".log"));
+        setLoggerLevelAndFormat(logger, Level.ALL, GameLog.DEFAULT_FORMAT);
 
         return logger;
     }
 
     public static void setLoggerLevelAndFormat(Logger logger, Level level, String format) {
         Handler[] handlers = logger.getHandlers();
-        if (handlers != null) Arrays.stream(handlers).forEach(h -> h.setFormatter(new SimpleFormatter() {
-            // default format (with timestamp)  = "[%1$tF %1$tT] [%2$-7s] %3$s%n";
-            @Override
-            public synchronized String format(LogRecord lr) {
-                return String.format(format, new Date(lr.getMillis()),
-                        lr.getLevel().getLocalizedName(), lr.getMessage()
-                );
-            }
-        }));
+        if (handlers != null) Arrays.stream(handlers).forEach(h -> {
+            if (h instanceof GameLog.LogHandler) ((GameLog.LogHandler) h).setFormat(format);
+            else h.setFormatter(new SimpleFormatter() {
+                // default format (with timestamp)  = "[%1$tF %1$tT] [%2$-7s] %3$s%n";
+                @Override
+                public synchronized String format(LogRecord lr) {
+                    return String.format(format, new Date(lr.getMillis()),
+                            lr.getLevel().getLocalizedName(), lr.getMessage()
+                    );
+                }
+            });
+        });
         logger.setLevel(level);
     }
 }
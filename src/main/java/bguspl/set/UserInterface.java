@@ -56,6 +56,28 @@ public interface UserInterface {
      */
     void setElapsed(long millies);
 
+    /**
+     * Show a countdown to the specified deadline. The user interface keeps the countdown running by itself until the
+     * next call, so the caller only calls this when the deadline changes.
+     * By default, shows the time left now (for user interfaces that do not animate the countdown).
+     * @param deadline   - the time (as in System.currentTimeMillis) at which the countdown reaches 0.
+     * @param warnMillis - when less time than this is left, the timer is painted in red and displays milliseconds.
+     */
+    default void setCountdownDeadline(long deadline, long warnMillis) {
+        long millies = Math.max(0, deadline - System.currentTimeMillis());
+        setCountdown(millies, millies < warnMillis);
+    }
+
+    /**
+     * Show the time elapsed since the specified start time. The user interface keeps it running by itself until the
+     * next call, so the caller only calls this when the start time changes.
+     * By default, shows the time elapsed until now (for user interfaces that do not animate the timer).
+     * @param start - the start time (as in System.currentTimeMillis).
+     */
+    default void setElapsedSince(long start) {
+        setElapsed(System.currentTimeMillis() - start);
+    }
+
     /**
      * Set the player text in the score panel to show remaining freeze time.
      * If milliseconds > 0, show player name in red, and add freeze time.
@@ -2,18 +2,19 @@ package bguspl.set;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 public class UserInterfaceDecorator implements UserInterface {
 
-    private final Logger logger;
+    private final GameLog log;
     private final Util util;
     private final UserInterface ui;
 
     public UserInterfaceDecorator(Logger logger, Util util, UserInterface ui) {
         this.ui = ui;
-        this.logger = logger;
+        this.log = GameLog.of(logger);
         this.util = util;
 
         if (ui == null) System.out.println("running without a user interface. Check logs.");
@@ -21,42 +22,42 @@ public class UserInterfaceDecorator implements UserInterface {
 
     @Override
     public void placeCard(int card, int slot) {
-        logger.severe("placing card " + card + " in slot " + slot);
+        log.log(Level.SEVERE, "placing card {} in slot {}", card, slot);
         util.spin();
         if (ui != null) ui.placeCard(card, slot);
     }
 
     @Override
     public void removeCard(int slot) {
-        logger.severe("removing card from slot " + slot);
+        log.log(Level.SEVERE, "removing card from slot {}", slot);
         util.spin();
         if (ui != null) ui.removeCard(slot);
     }
 
     @Override
     public void placeToken(int player, int slot) {
-        logger.severe("player " + (player + 1) + " placing token on slot " + slot);
+        log.log(Level.SEVERE, "player {} placing token on slot {}", player + 1, slot);
         util.spin();
         if (ui != null) ui.placeToken(player, slot);
     }
 
     @Override
     public void removeTokens() {
-        logger.severe("removing all tokens");
+        log.log(Level.SEVERE, "removing all tokens");
         util.spin();
         if (ui != null) ui.removeTokens();
     }
 
     @Override
     public void removeTokens(int slot) {
-        logger.severe("removing tokens from slot " + slot);
+        log.log(Level.SEVERE, "removing tokens from slot {}", slot);
         util.spin();
         if (ui != null) ui.removeTokens(slot);
     }
 
     @Override
     public void removeToken(int player, int slot) {
-        logger.severe("removing player " + (player + 1) + " token from slot " + slot);
+        log.log(Level.SEVERE, "removing player {} token from slot {}", player + 1, slot);
         util.spin();
         if (ui != null) ui.removeToken(player, slot);
     }
@@ -64,41 +65,55 @@ public class UserInterfaceDecorator implements UserInterface {
     @Override
     public void setCountdown(long millies, boolean warn) {
         if (!warn || millies % 1000L == 0L)
-            logger.severe("updating countdown to " + millies);
+            log.log(Level.SEVERE, "updating countdown to {}", millies);
         if (ui != null) ui.setCountdown(millies, warn);
     }
 
     @Override
     public void setElapsed(long millies) {
-        logger.severe("updating elapsed time to " + millies);
+        log.log(Level.SEVERE, "updating elapsed time to {}", millies);
         util.spin();
         if (ui != null) ui.setElapsed(millies);
     }
 
+    @Override
+    public void setCountdownDeadline(long deadline, long warnMillis) {
+        log.log(Level.SEVERE, "setting countdown deadline in {} (warning at {})", deadline - System.currentTimeMillis(), warnMillis);
+        if (ui != null) ui.setCountdownDeadline(deadline, warnMillis);
+    }
+
+    @Override
+    public void setElapsedSince(long start) {
+        log.log(Level.SEVERE, "setting elapsed time start {} ago", System.currentTimeMillis() - start);
+        if (ui != null) ui.setElapsedSince(start);
+    }
+
     @Override
     public void setFreeze(int player, long millies) {
-        logger.severe("setting player " + (player + 1) + " freeze to " + millies);
+        log.log(Level.SEVERE, "setting player {} freeze to {}", player + 1, millies);
         util.spin();
         if (ui != null) ui.setFreeze(player, millies);
     }
 
     @Override
     public void setScore(int player, int score) {
-        logger.severe("setting player " + (player + 1) + " score to " + score);
+        log.log(Level.SEVERE, "setting player {} score to {}", player + 1, score);
         util.spin();
         if (ui != null) ui.setScore(player, score);
     }
 
     @Override
     public void announceWinner(int[] players) {
-        List<String> winners = Arrays.stream(players).mapToObj(id -> "player " + (id + 1)).collect(Collectors.toList());
-        logger.severe("announcing winner(s): " + String.join(", ", winners));
+        if (log.isLoggable(Level.SEVERE)) {
+            List<String> winners = Arrays.stream(players).mapToObj(id -> "player " + (id + 1)).collect(Collectors.toList());
+            log.log(Level.SEVERE, "announcing winner(s): " + String.join(", ", winners));
+        }
         if (ui != null) ui.announceWinner(players);
     }
 
     @Override
     public void dispose() {
-        logger.severe("disposing of user interface elements");
+        log.log(Level.SEVERE, "disposing of user interface elements");
         if (ui != null) ui.dispose();
     }
 }
@@ -0,0 +1,189 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+/**
+ * A user interface that records every call to a file, so a game played without a window (e.g. headless at full
+ * speed) can be watched afterwards with UserInterfaceReplay.
+ *
+ * The file starts with a header (see writeHeader), followed by a record per call: the time since the recording
+ * started (int, milliseconds), the opcode (byte), and the arguments of the call (fixed size, big-endian). The records
+ * are collected in a buffer that is written to the file when it fills up, when a record comes FLUSH_MILLIS or more
+ * after the last write (so a game that is killed loses little of its recording), and when the user interface is
+ * disposed.
+ */
+public class UserInterfaceRecorder implements UserInterface {
+
+    static final int MAGIC = 0x53455452; // "SETR"
+    static final short VERSION = 1;
+
+    static final byte PLACE_CARD = 1;           // int card, int slot
+    static final byte REMOVE_CARD = 2;          // int slot
+    static final byte PLACE_TOKEN = 3;          // int player, int slot
+    static final byte REMOVE_TOKENS = 4;        //
+    static final byte REMOVE_SLOT_TOKENS = 5;   // int slot
+    static final byte REMOVE_TOKEN = 6;         // int player, int slot
+    static final byte COUNTDOWN = 7;            // long millies, byte warn
+    static final byte ELAPSED = 8;              // long millies
+    static final byte FREEZE = 9;               // int player, long millies
+    static final byte SCORE = 10;               // int player, int score
+    static final byte WINNERS = 11;             // int count, int player * count
+    static final byte DISPOSE = 12;             //
+    static final byte COUNTDOWN_DEADLINE = 13;  // long deadline (since the recording started), long warnMillis
+    static final byte ELAPSED_SINCE = 14;       // long start (since the recording started)
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long FLUSH_MILLIS = 1000;
+
+    private final Logger logger;
+    private final Path path;
+    private final long startMillis;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private FileChannel file;
+    private long lastWriteMillis;
+
+    /**
+     * Creates the recording file (replacing an existing one) and writes its header.
+     *
+     * @param logger - the logger.
+     * @param config - the game configuration (the table size and the number of players are recorded).
+     * @param path   - the recording file.
+     * @throws IOException - if the file cannot be created.
+     */
+    public UserInterfaceRecorder(Logger logger, Config config, Path path) throws IOException {
+        this.logger = logger;
+        this.path = path;
+        this.startMillis = System.currentTimeMillis();
+        this.lastWriteMillis = startMillis;
+        this.file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        writeHeader(config);
+        logger.info("recording the user interface to " + path + ".");
+    }
+
+    private void writeHeader(Config config) {
+        buffer.putInt(MAGIC).putShort(VERSION).putLong(startMillis)
+                .putInt(config.rows).putInt(config.columns).putInt(config.players)
+                .putInt(config.featureCount).putInt(config.featureSize);
+    }
+
+    /**
+     * Starts a record, writing the buffer to the file first if the record may not fit or the last write was
+     * FLUSH_MILLIS ago.
+     *
+     * @return - false if the recording was stopped (after an error or dispose).
+     */
+    private boolean record(byte opcode, int argumentsSize) {
+        if (file == null) return false;
+        long now = System.currentTimeMillis();
+        if ((buffer.remaining() < 5 + argumentsSize || now - lastWriteMillis >= FLUSH_MILLIS) && !write()) return false;
+        buffer.putInt((int) (now - startMillis)).put(opcode);
+        return true;
+    }
+
+    private boolean write() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining())
+                file.write(buffer);
+            buffer.clear();
+            lastWriteMillis = System.currentTimeMillis();
+            return true;
+        } catch (IOException e) {
+            logger.severe("cannot write the recording " + path + ", stopped recording: " + e);
+            close();
+            return false;
+        }
+    }
+
+    private void close() {
+        try {
+            file.close();
+        } catch (IOException ignored) {
+        }
+        file = null;
+    }
+
+    @Override
+    public synchronized void placeCard(int card, int slot) {
+        if (record(PLACE_CARD, 8)) buffer.putInt(card).putInt(slot);
+    }
+
+    @Override
+    public synchronized void removeCard(int slot) {
+        if (record(REMOVE_CARD, 4)) buffer.putInt(slot);
+    }
+
+    @Override
+    public synchronized void placeToken(int player, int slot) {
+        if (record(PLACE_TOKEN, 8)) buffer.putInt(player).putInt(slot);
+    }
+
+    @Override
+    public synchronized void removeTokens() {
+        record(REMOVE_TOKENS, 0);
+    }
+
+    @Override
+    public synchronized void removeTokens(int slot) {
+        if (record(REMOVE_SLOT_TOKENS, 4)) buffer.putInt(slot);
+    }
+
+    @Override
+    public synchronized void removeToken(int player, int slot) {
+        if (record(REMOVE_TOKEN, 8)) buffer.putInt(player).putInt(slot);
+    }
+
+    @Override
+    public synchronized void setCountdown(long millies, boolean warn) {
+        if (record(COUNTDOWN, 9)) buffer.putLong(millies).put((byte) (warn ? 1 : 0));
+    }
+
+    @Override
+    public synchronized void setElapsed(long millies) {
+        if (record(ELAPSED, 8)) buffer.putLong(millies);
+    }
+
+    @Override
+    public synchronized void setCountdownDeadline(long deadline, long warnMillis) {
+        if (record(COUNTDOWN_DEADLINE, 16)) buffer.putLong(deadline - startMillis).putLong(warnMillis);
+    }
+
+    @Override
+    public synchronized void setElapsedSince(long start) {
+        if (record(ELAPSED_SINCE, 8)) buffer.putLong(start - startMillis);
+    }
+
+    @Override
+    public synchronized void setFreeze(int player, long millies) {
+        if (record(FREEZE, 12)) buffer.putInt(player).putLong(millies);
+    }
+
+    @Override
+    public synchronized void setScore(int player, int score) {
+        if (record(SCORE, 8)) buffer.putInt(player).putInt(score);
+    }
+
+    @Override
+    public synchronized void announceWinner(int[] players) {
+        if (5 + 4 + 4 * players.length > BUFFER_SIZE) return; // more winners than a record can hold
+        if (!record(WINNERS, 4 + 4 * players.length)) return;
+        buffer.putInt(players.length);
+        for (int player : players)
+            buffer.putInt(player);
+    }
+
+    @Override
+    public synchronized void dispose() {
+        if (!record(DISPOSE, 0)) return;
+        if (write()) {
+            logger.info("recorded the user interface to " + path + ".");
+            close();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package bguspl.set;
+
+import bguspl.set.ex.Player;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+/**
+ * Plays a recording of UserInterfaceRecorder in the swing window, at the recorded speed or faster.
+ * The window must be created with the configuration the game was recorded with (the same table and players).
+ *
+ * Usage: java -cp target/classes bguspl.set.UserInterfaceReplay [recording] [speed] [config file]
+ */
+public class UserInterfaceReplay {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel file;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    UserInterfaceReplay(FileChannel file) {
+        this.file = file;
+        buffer.flip();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String recording = args.length > 0 ? args[0] : "game.rec";
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+        if (!(speed > 0)) throw new IllegalArgumentException("the speed must be positive, not " + args[1]);
+        String configFile = args.length > 2 ? args[2] : "config.properties";
+
+        Logger logger = Logger.getLogger("SetReplayLogger");
+        Config config = new Config(logger, configFile);
+        try (FileChannel file = FileChannel.open(Paths.get(recording), StandardOpenOption.READ)) {
+            UserInterfaceReplay replay = new UserInterfaceReplay(file);
+            long recordedStart = replay.readHeader(config);
+            // no players: the keys are ignored
+            UserInterface ui = new UserInterfaceSwing(logger, config, new UtilImpl(config), new Player[0]);
+            System.out.printf("replaying %s (recorded %tc) at %.1fx speed%n", recording, recordedStart, speed);
+            replay.play(ui, speed);
+            System.out.println("replay finished, close the window to exit.");
+        }
+    }
+
+    /**
+     * Reads the header of the recording and checks it matches the configuration.
+     *
+     * @return - the time the recording started.
+     */
+    long readHeader(Config config) throws IOException {
+        need(4 + 2 + 8 + 5 * 4);
+        if (buffer.getInt() != UserInterfaceRecorder.MAGIC) throw new IOException("not a recording");
+        short version = buffer.getShort();
+        if (version != UserInterfaceRecorder.VERSION) throw new IOException("unsupported recording version " + version);
+        long start = buffer.getLong();
+        int rows = buffer.getInt(), columns = buffer.getInt(), players = buffer.getInt();
+        int featureCount = buffer.getInt(), featureSize = buffer.getInt();
+        if (rows != config.rows || columns != config.columns || players != config.players
+                || featureCount != config.featureCount || featureSize != config.featureSize)
+            throw new IOException(String.format("recorded with %dx%d cells, %d players and %d^%d cards, the configuration"
+                            + " has %dx%d cells, %d players and %d^%d cards", rows, columns, players, featureSize,
+                    featureCount, config.rows, config.columns, config.players, config.featureSize, config.featureCount));
+        return start;
+    }
+
+    /**
+     * Makes sure the buffer holds the given number of bytes, reading more of the file if needed.
+     */
+    private void need(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) return;
+        buffer.compact();
+        while (buffer.position() < bytes)
+            if (file.read(buffer) < 0) throw new EOFException();
+        buffer.flip();
+    }
+
+    /**
+     * Calls the user interface at the recorded times, divided by the speed.
+     *
+     * @param ui    - the user interface.
+     * @param speed - how many times faster than recorded to play (positive).
+     */
+    void play(UserInterface ui, double speed) throws IOException, InterruptedException {
+        long replayStart = System.currentTimeMillis();
+        while (true) {
+            try {
+                need(5);
+            } catch (EOFException e) {
+                return; // the recording ended without dispose (e.g. the game was killed)
+            }
+            int time = buffer.getInt();
+            byte opcode = buffer.get();
+            long due = replayStart + (long) (time / speed);
+            long wait = due - System.currentTimeMillis();
+            if (wait > 0) Thread.sleep(wait);
+
+            switch (opcode) {
+                case UserInterfaceRecorder.PLACE_CARD:
+                    need(8);
+                    int card = buffer.getInt();
+                    ui.placeCard(card, buffer.getInt());
+                    break;
+                case UserInterfaceRecorder.REMOVE_CARD:
+                    need(4);
+                    ui.removeCard(buffer.getInt());
+                    break;
+                case UserInterfaceRecorder.PLACE_TOKEN:
+                    need(8);
+                    int placing = buffer.getInt();
+                    ui.placeToken(placing, buffer.getInt());
+                    break;
+                case UserInterfaceRecorder.REMOVE_TOKENS:
+                    ui.removeTokens();
+                    break;
+                case UserInterfaceRecorder.REMOVE_SLOT_TOKENS:
+                    need(4);
+                    ui.removeTokens(buffer.getInt());
+                    break;
+                case UserInterfaceRecorder.REMOVE_TOKEN:
+                    need(8);
+                    int removing = buffer.getInt();
+                    ui.removeToken(removing, buffer.getInt());
+                    break;
+                case UserInterfaceRecorder.COUNTDOWN:
+                    need(9);
+                    long millies = buffer.getLong();
+                    ui.setCountdown(millies, buffer.get() != 0);
+                    break;
+                case UserInterfaceRecorder.ELAPSED:
+                    need(8);
+                    ui.setElapsed(buffer.getLong());
+                    break;
+                case UserInterfaceRecorder.COUNTDOWN_DEADLINE:
+                    need(16);
+                    long deadline = replayStart + (long) (buffer.getLong() / speed); // the remaining time is scaled too
+                    ui.setCountdownDeadline(deadline, buffer.getLong());
+                    break;
+                case UserInterfaceRecorder.ELAPSED_SINCE:
+                    need(8);
+                    ui.setElapsedSince(replayStart + (long) (buffer.getLong() / speed));
+                    break;
+                case UserInterfaceRecorder.FREEZE:
+                    need(12);
+                    int frozen = buffer.getInt();
+                    ui.setFreeze(frozen, buffer.getLong());
+                    break;
+                case UserInterfaceRecorder.SCORE:
+                    need(8);
+                    int scoring = buffer.getInt();
+                    ui.setScore(scoring, buffer.getInt());
+                    break;
+                case UserInterfaceRecorder.WINNERS:
+                    need(4);
+                    int[] winners = new int[buffer.getInt()];
+                    need(4 * winners.length);
+                    for (int i = 0; i < winners.length; i++)
+                        winners[i] = buffer.getInt();
+                    ui.announceWinner(winners);
+                    break;
+                case UserInterfaceRecorder.DISPOSE:
+                    return; // the window stays open so the end of the game can be seen
+                default:
+                    throw new IOException("unknown opcode " + opcode + " at " + time + " ms");
+            }
+        }
+    }
+}
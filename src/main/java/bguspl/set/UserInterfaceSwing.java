@@ -4,10 +4,11 @@ import bguspl.set.ex.Player;
 
 import javax.swing.*;
 import java.awt.*;
-import java.io.FileNotFoundException;
-import java.net.URL;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -23,18 +24,34 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
     private final PlayersPanel playersPanel;
     private final WinnerPanel winnerPanel;
     private final Config config;
+    private final PendingUpdates pending;
+    private final Timer frameTimer; // null when every change is applied immediately
+    private final long frameNanos;
+    private volatile long lastFrameNanos;
+    private final EdtMonitor monitor;
 
     static String intInBaseToPaddedString(int n, int padding, int base) {
         return format("%" + padding + "s", Integer.toString(n, base)).replace(' ', '0');
     }
 
-    public UserInterfaceSwing(Logger logger, Config config, Player[] players) {
+    public UserInterfaceSwing(Logger logger, Config config, Util util, Player[] players) {
 
         this.config = config;
+        monitor = new EdtMonitor(logger, config);
         timerPanel = new TimerPanel();
-        gamePanel = new GamePanel();
+        gamePanel = new GamePanel(createCardImages(logger, config, util));
         playersPanel = new PlayersPanel();
         winnerPanel = new WinnerPanel();
+        pending = new PendingUpdates();
+        if (config.uiFramesPerSecond > 0) {
+            int frameMillis = Math.max(1, 1000 / config.uiFramesPerSecond);
+            frameNanos = TimeUnit.MILLISECONDS.toNanos(frameMillis);
+            frameTimer = new Timer(frameMillis, e -> applyFrame());
+            frameTimer.setRepeats(false);
+        } else {
+            frameNanos = 0;
+            frameTimer = null;
+        }
 
         setLayout(new GridBagLayout());
         GridBagConstraints gbc = new GridBagConstraints();
@@ -67,11 +84,175 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         addWindowListener(new WindowManager());
 
         EventQueue.invokeLater(() -> setVisible(true));
+        monitor.start();
+    }
+
+    private static CardImages createCardImages(Logger logger, Config config, Util util) {
+        boolean images = config.cardRendering.equals("images")
+                || !config.cardRendering.equals("procedural") && CardAtlas.available(config);
+        if (images) return new CardAtlas(logger, config);
+        logger.info("drawing the cards from their features.");
+        return new CardRenderer(config, util);
+    }
+
+    /**
+     * The changes made to the window since the last frame. The game threads record them here, from any thread, and the
+     * event dispatch thread applies them all together at most once per frame (see applyFrame).
+     */
+    private class PendingUpdates {
+
+        private final int[] cards = new int[config.tableSize]; // -1 for an empty slot
+        private final long[][] tokens = new long[config.tableSize][tokenWords()]; // a bit per player in each slot
+        private final boolean[] slotChanged = new boolean[config.tableSize];
+        private final long[] freezes = new long[config.players];
+        private final int[] scores = new int[config.players];
+        private final boolean[] playerChanged = new boolean[config.players];
+        private int timerMode;
+        private long timerValue;
+        private long timerWarnMillis;
+        private boolean timerChanged;
+        private int[] winners;
+        private boolean frameScheduled;
+
+        private PendingUpdates() {
+            Arrays.fill(cards, -1);
+        }
+
+        private synchronized void placeCard(int card, int slot) {
+            cards[slot] = card;
+            slotChanged(slot);
+        }
+
+        private synchronized void removeCard(int slot) {
+            cards[slot] = -1;
+            slotChanged(slot);
+        }
+
+        private synchronized void setToken(int player, int slot, boolean placed) {
+            if (placed) tokens[slot][player >> 6] |= 1L << player;
+            else tokens[slot][player >> 6] &= ~(1L << player);
+            slotChanged(slot);
+        }
+
+        private synchronized void removeTokens(int slot) {
+            Arrays.fill(tokens[slot], 0);
+            slotChanged(slot);
+        }
+
+        private synchronized void removeTokens() {
+            for (int slot = 0; slot < config.tableSize; slot++)
+                removeTokens(slot);
+        }
+
+        private synchronized void setTimer(int mode, long value, long warnMillis) {
+            timerMode = mode;
+            timerValue = value;
+            timerWarnMillis = warnMillis;
+            timerChanged = true;
+            scheduleFrame();
+        }
+
+        private synchronized void setFreeze(int player, long millies) {
+            freezes[player] = millies;
+            playerChanged[player] = true;
+            scheduleFrame();
+        }
+
+        private synchronized void setScore(int player, int score) {
+            scores[player] = score;
+            playerChanged[player] = true;
+            scheduleFrame();
+        }
+
+        private synchronized void announceWinner(int[] players) {
+            winners = players.clone();
+            scheduleFrame();
+        }
+
+        private void slotChanged(int slot) {
+            slotChanged[slot] = true;
+            scheduleFrame();
+        }
+
+        private void scheduleFrame() {
+            if (frameScheduled) return;
+            frameScheduled = true;
+            // right away if the last frame is old enough, otherwise when the frame timer goes off
+            if (frameTimer == null || System.nanoTime() - lastFrameNanos >= frameNanos)
+                EventQueue.invokeLater(UserInterfaceSwing.this::applyFrame);
+            else
+                frameTimer.start();
+        }
+    }
+
+    /**
+     * Applies the pending updates to the swing components. Called on the event dispatch thread only.
+     */
+    private void applyFrame() {
+        long begin = monitor.begin();
+        int changedSlots = 0;
+        int changedPlayers = 0;
+        boolean timerChanged;
+        int[] winners;
+        synchronized (pending) {
+            if (!pending.frameScheduled) return; // already applied by an earlier frame
+            pending.frameScheduled = false;
+            lastFrameNanos = System.nanoTime();
+            for (int slot = 0; slot < config.tableSize; slot++) {
+                if (!pending.slotChanged[slot]) continue;
+                pending.slotChanged[slot] = false;
+                gamePanel.setSlot(slot, pending.cards[slot], pending.tokens[slot]);
+                gamePanel.changedSlots[changedSlots++] = slot;
+            }
+            for (int player = 0; player < config.players; player++) {
+                if (!pending.playerChanged[player]) continue;
+                pending.playerChanged[player] = false;
+                playersPanel.freezes[player] = pending.freezes[player];
+                playersPanel.scores[player] = pending.scores[player];
+                playersPanel.changedPlayers[changedPlayers++] = player;
+            }
+            timerChanged = pending.timerChanged;
+            pending.timerChanged = false;
+            if (timerChanged) timerPanel.set(pending.timerMode, pending.timerValue, pending.timerWarnMillis);
+            winners = pending.winners;
+            pending.winners = null;
+        }
+
+        // only the cells that changed are repainted (the repaint manager merges them into one paint per frame)
+        for (int i = 0; i < changedSlots; i++)
+            gamePanel.repaintSlot(gamePanel.changedSlots[i]);
+        for (int i = 0; i < changedPlayers; i++)
+            playersPanel.update(playersPanel.changedPlayers[i]);
+        if (timerChanged) timerPanel.update();
+        if (winners != null) {
+            playersPanel.setVisible(false);
+            winnerPanel.announceWinner(winners);
+            winnerPanel.setVisible(true);
+        }
+        monitor.end(EdtMonitor.FRAME, begin);
+    }
+
+    /**
+     * @return - the number of words of a bitmask with a bit per player.
+     */
+    private int tokenWords() {
+        return (config.players + 63) / 64;
     }
 
     private class TimerPanel extends JPanel {
 
+        private static final int COUNTDOWN = 0;        // a fixed countdown value (warning if warnMillis > 0)
+        private static final int ELAPSED = 1;          // a fixed elapsed time
+        private static final int COUNTDOWN_TO = 2;     // a countdown to a deadline, animated
+        private static final int ELAPSED_SINCE = 3;    // the time since a start time, animated
+
         private final JLabel timerField;
+        private final Timer animation; // repaints the animated timer whenever the text it shows changes
+        private final int frameMillis;
+        private int mode;
+        private long value;
+        private long warnMillis;
+        private String shown;
 
         private String generateTime(long millies, boolean warn) {
             if (warn)
@@ -88,133 +269,264 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             timerField.setForeground(Color.BLACK);
 
             add(timerField);
+
+            frameMillis = displayFrameMillis();
+            animation = new Timer(frameMillis, e -> update());
+            animation.setRepeats(false);
         }
 
-        private void setCountdown(long millies, boolean warn) {
-            timerField.setText(generateTime(millies, warn));
-            timerField.setForeground(warn ? Color.RED : Color.BLACK);
+        /**
+         * @return - the time between two frames of the warning countdown: the display's refresh period, but not
+         *           shorter than the frame period of the window (Config.uiFramesPerSecond).
+         */
+        private int displayFrameMillis() {
+            int refreshRate = DisplayMode.REFRESH_RATE_UNKNOWN;
+            try {
+                refreshRate = getGraphicsConfiguration() != null
+                        ? getGraphicsConfiguration().getDevice().getDisplayMode().getRefreshRate()
+                        : GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+            } catch (HeadlessException ignored) {
+            }
+            int millis = refreshRate > 0 ? 1000 / refreshRate : 1000 / 60;
+            if (config.uiFramesPerSecond > 0) millis = Math.max(millis, 1000 / config.uiFramesPerSecond);
+            return Math.max(1, millis);
         }
 
-        private void setElapsed(long millies) {
-            timerField.setText("Elapsed time: " + millies / 1000);
+        private void set(int mode, long value, long warnMillis) {
+            this.mode = mode;
+            this.value = value;
+            this.warnMillis = warnMillis;
+        }
+
+        /**
+         * Shows the timer, and for an animated timer, schedules the next update for when the text changes.
+         */
+        private void update() {
+            long begin = monitor.begin();
+            animation.stop();
+            long now = System.currentTimeMillis();
+            long millies;
+            boolean warn;
+            long nextChange = -1;
+            switch (mode) {
+                case COUNTDOWN_TO:
+                    millies = Math.max(0, value - now);
+                    warn = millies < warnMillis;
+                    if (millies > 0) nextChange = warn ? frameMillis
+                            : Math.min(millies % 1000 + 1, millies - warnMillis + 1); // next second, or the warning
+                    break;
+                case ELAPSED_SINCE:
+                    millies = Math.max(0, now - value);
+                    warn = false;
+                    nextChange = 1000 - millies % 1000;
+                    break;
+                default:
+                    millies = value;
+                    warn = mode == COUNTDOWN && warnMillis > 0;
+            }
+            String text = mode == ELAPSED || mode == ELAPSED_SINCE ? "Elapsed time: " + millies / 1000 : generateTime(millies, warn);
+            if (!text.equals(shown)) {
+                shown = text;
+                timerField.setText(text);
+                if (mode == COUNTDOWN || mode == COUNTDOWN_TO) timerField.setForeground(warn ? Color.RED : Color.BLACK);
+            }
+            if (nextChange > 0) {
+                animation.setInitialDelay((int) Math.min(Integer.MAX_VALUE, nextChange));
+                animation.start();
+            }
+            monitor.end(EdtMonitor.TIMER, begin);
         }
     }
 
-    private class GamePanel extends JLayeredPane {
+    /**
+     * The table. The cells are composed in a back buffer of the whole table, a VolatileImage (or a BufferedImage when
+     * no accelerated image can be had), where only the cells that changed are drawn again. Painting the panel copies
+     * the buffer to the screen.
+     */
+    private class GamePanel extends JComponent {
 
-        private final Image emptyCard;
-        private final Image[] deck;
-        private final Image[][] grid;
-        private final boolean[][][] playerTokens;
-        private final JLabel[][] tokenText;
+        private static final int TOKEN_GAP = 2;
+        private static final int MAX_VOLATILE_ATTEMPTS = 3;
 
-        private Image loadImageResource(String filename) {
-            URL imageResource = getClass().getClassLoader().getResource(filename);
-            if (imageResource == null)
-                throw new RuntimeException(new FileNotFoundException(filename));
-            return new ImageIcon(imageResource).getImage();
-        }
+        private final CardImages images;
+        private final int[][] grid; // the card in each cell, -1 for an empty cell
+        private final long[][] tokens; // the players' tokens in each slot, a bit per player
+        private final BufferedImage[] tokenGlyphs; // the name tag of each player, drawn once
+        private final int[] changedSlots = new int[config.tableSize];
+        private final boolean[] staleCells = new boolean[config.tableSize]; // not drawn in the back buffer yet
+        private boolean allCellsStale = true;
+        private VolatileImage volatileBuffer;
+        private BufferedImage bufferedBuffer; // when there is no volatile image, or it kept losing its contents
 
-        private GamePanel() {
+        private GamePanel(CardImages images) {
+
+            this.images = images;
+            images.onLoaded(this::cardLoaded);
 
             setPreferredSize(new Dimension(config.columns * config.cellWidth, config.rows * config.cellHeight));
+            setOpaque(true);
+
+            // init the cards on the table grid as empty cards, with no tokens
+            grid = new int[config.rows][config.columns];
+            for (int[] row : grid)
+                Arrays.fill(row, -1);
+            tokens = new long[config.tableSize][tokenWords()];
+
+            tokenGlyphs = new BufferedImage[config.players];
+            Font font = UIManager.getFont("Label.font");
+            if (font == null) font = new Font("Dialog", Font.BOLD, 12);
+            for (int player = 0; player < config.players; player++)
+                tokenGlyphs[player] = createTokenGlyph(player, font);
+        }
 
-            // init deck and load all pictures from png files
-            assert config.featureSize < 10; // otherwise there will be naming conflicts
-
-            // load the image resources
-            deck = new Image[config.deckSize];
-            for (int i = 0; i < config.deckSize; ++i)
-                deck[i] = loadImageResource("cards/" + intInBaseToPaddedString(i, config.featureCount, config.featureSize) + ".png");
-            emptyCard = loadImageResource("cards/empty_card.png");
-
-            grid = new Image[config.rows][config.columns];
-            tokenText = new JLabel[config.rows][config.columns];
-            playerTokens = new boolean[config.players][config.rows][config.columns];
-            for (int row = 0; row < config.rows; row++) {
-                for (int column = 0; column < config.columns; column++) {
-                    // init the cards on the table grid as empty cards
-                    grid[row][column] = emptyCard;
-
-                    // init the JLabel selection overlay
-                    tokenText[row][column] = new JLabel("");
-                    tokenText[row][column].setVerticalAlignment(JLabel.TOP);
-                    tokenText[row][column].setHorizontalAlignment(JLabel.CENTER);
-                    tokenText[row][column].setOpaque(false);
-                    tokenText[row][column].setBorder(BorderFactory.createLineBorder(Color.black));
-                    tokenText[row][column].setBounds((column * config.cellWidth), (row * config.cellHeight), config.cellWidth, config.cellHeight);
-                    add(tokenText[row][column]);
-                }
+        /**
+         * Draws the name tag of a player: the name on a marker in the player's color.
+         */
+        private BufferedImage createTokenGlyph(int player, Font font) {
+            String name = config.playerNames[player];
+            Graphics measure = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).getGraphics();
+            FontMetrics metrics = measure.getFontMetrics(font);
+            measure.dispose();
+            int width = Math.min(config.cellWidth - 2 * TOKEN_GAP, metrics.stringWidth(name) + 2 * TOKEN_GAP);
+            int height = metrics.getHeight();
+            BufferedImage glyph = CardImages.createCompatibleImage(Math.max(1, width), height);
+            Graphics2D g = glyph.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                g.setColor(Color.getHSBColor((float) player / config.players, 0.45f, 1f));
+                g.fillRoundRect(0, 0, width, height, height / 2, height / 2);
+                g.setColor(Color.BLACK);
+                g.setFont(font);
+                g.drawString(name, TOKEN_GAP, metrics.getAscent());
+            } finally {
+                g.dispose();
             }
+            return glyph;
         }
 
-        private void placeCard(int slot, int card) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            grid[row][column] = deck[card];
-            validate();
-            repaint();
+        private void setSlot(int slot, int card, long[] slotTokens) {
+            grid[slot / config.columns][slot % config.columns] = card;
+            System.arraycopy(slotTokens, 0, tokens[slot], 0, slotTokens.length);
+            staleCells[slot] = true;
         }
 
-        private void removeCard(int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            grid[row][column] = emptyCard;
-            validate();
-            repaint();
+        /**
+         * Draws the cells of a card again, after its image was made in the background.
+         */
+        private void cardLoaded(int card) {
+            for (int slot = 0; slot < config.tableSize; slot++) {
+                if (grid[slot / config.columns][slot % config.columns] != card) continue;
+                staleCells[slot] = true;
+                repaintSlot(slot);
+            }
         }
 
-        private void placeToken(int player, int slot) {
+        private void repaintSlot(int slot) {
             int row = slot / config.columns;
             int column = slot % config.columns;
-            playerTokens[player][row][column] = true;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+            repaint(column * config.cellWidth, row * config.cellHeight, config.cellWidth, config.cellHeight);
         }
 
-        private void removeTokens() {
-            for (int i = 0; i < config.tableSize; i++)
-                removeTokens(i);
+        @Override
+        public void paintComponent(Graphics g) {
+            long begin = monitor.begin();
+            paintTable(g);
+            monitor.end(EdtMonitor.PAINT, begin);
         }
 
-        private void removeTokens(int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            for (int player = 0; player < playerTokens.length; player++) {
-                playerTokens[player][row][column] = false;
-                tokenText[row][column].setText(generatePlayersTokenText(row, column));
+        private void paintTable(Graphics g) {
+            int width = config.columns * config.cellWidth;
+            int height = config.rows * config.cellHeight;
+            GraphicsConfiguration gc = getGraphicsConfiguration();
+            if (bufferedBuffer == null && gc != null) {
+                for (int attempt = 0; attempt < MAX_VOLATILE_ATTEMPTS; attempt++) {
+                    int state = volatileBuffer == null ? VolatileImage.IMAGE_INCOMPATIBLE : volatileBuffer.validate(gc);
+                    if (state == VolatileImage.IMAGE_INCOMPATIBLE) {
+                        if (volatileBuffer != null) volatileBuffer.flush();
+                        volatileBuffer = gc.createCompatibleVolatileImage(width, height);
+                        allCellsStale = true;
+                        if (volatileBuffer == null) break;
+                    } else if (state == VolatileImage.IMAGE_RESTORED) {
+                        allCellsStale = true; // the contents were lost
+                    }
+                    updateBuffer(volatileBuffer);
+                    if (!volatileBuffer.contentsLost()) {
+                        g.drawImage(volatileBuffer, 0, 0, null);
+                        return;
+                    }
+                    allCellsStale = true;
+                }
+                // the acceleration keeps getting lost: use a plain image from now on
+                if (volatileBuffer != null) volatileBuffer.flush();
+                volatileBuffer = null;
+            }
+            if (bufferedBuffer == null) {
+                bufferedBuffer = CardImages.createCompatibleImage(width, height);
+                allCellsStale = true;
             }
+            updateBuffer(bufferedBuffer);
+            g.drawImage(bufferedBuffer, 0, 0, null);
         }
 
-        private void removeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            playerTokens[player][row][column] = false;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+        /**
+         * Draws the cells that changed since the last update in the back buffer (all of them after it was created or
+         * lost its contents).
+         */
+        private void updateBuffer(Image buffer) {
+            Graphics g = buffer.getGraphics();
+            try {
+                for (int slot = 0; slot < config.tableSize; slot++) {
+                    if (!allCellsStale && !staleCells[slot]) continue;
+                    staleCells[slot] = false;
+                    paintCell(g, slot / config.columns, slot % config.columns);
+                }
+                allCellsStale = false;
+            } finally {
+                g.dispose();
+            }
         }
 
-        private String generatePlayersTokenText(int row, int column) {
-            String text = "";
-            for (int player = 0; player < config.players; player++) {
-                if (playerTokens[player][row][column])
-                    text = text.concat(config.playerNames[player] + ", ");
-            }
-            if (text.length() < 2)
-                return "";
-            return text.substring(0, text.length() - 2);
+        private void paintCell(Graphics g, int row, int column) {
+            int x = column * config.cellWidth;
+            int y = row * config.cellHeight;
+            g.setColor(getBackground() != null ? getBackground() : Color.WHITE);
+            g.fillRect(x, y, config.cellWidth, config.cellHeight); // the card images may be transparent
+            g.drawImage(grid[row][column] < 0 ? images.empty() : images.card(grid[row][column]), x, y, null);
+            paintTokens(g, row * config.columns + column, x, y);
+            g.setColor(Color.BLACK);
+            g.drawRect(x, y, config.cellWidth - 1, config.cellHeight - 1);
         }
 
-        @Override
-        public void paintComponent(Graphics g) {
-            // draw card images
-            for (int row = 0; row < config.rows; row++)
-                for (int column = 0; column < config.columns; column++)
-                    g.drawImage(grid[row][column], (column * config.cellWidth), (row * config.cellHeight), this);
+        /**
+         * Draws the name tags of the players that have a token in the slot, in rows from the top of the cell. Only the
+         * players that have a token are visited, so the cost does not depend on the number of players.
+         */
+        private void paintTokens(Graphics g, int slot, int cellX, int cellY) {
+            int x = cellX + TOKEN_GAP;
+            int y = cellY + TOKEN_GAP;
+            long[] slotTokens = tokens[slot];
+            for (int word = 0; word < slotTokens.length; word++) {
+                for (long bits = slotTokens[word]; bits != 0; bits &= bits - 1) {
+                    BufferedImage glyph = tokenGlyphs[(word << 6) + Long.numberOfTrailingZeros(bits)];
+                    if (x > cellX + TOKEN_GAP && x + glyph.getWidth() > cellX + config.cellWidth - TOKEN_GAP) {
+                        x = cellX + TOKEN_GAP; // next row
+                        y += glyph.getHeight() + TOKEN_GAP;
+                    }
+                    if (y + glyph.getHeight() > cellY + config.cellHeight) return; // the cell is full
+                    g.drawImage(glyph, x, y, null);
+                    x += glyph.getWidth() + TOKEN_GAP;
+                }
+            }
         }
     }
 
     private class PlayersPanel extends JPanel {
 
         private final JLabel[][] playersTable;
+        private final long[] freezes = new long[config.players];
+        private final int[] scores = new int[config.players];
+        private final int[] changedPlayers = new int[config.players];
 
         private PlayersPanel() {
             this.setLayout(new GridLayout(2, config.players));
@@ -235,7 +547,8 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             }
         }
 
-        private void setFreeze(int player, long millies) {
+        private void update(int player) {
+            long millies = freezes[player];
             if (millies > 0) {
                 this.playersTable[0][player].setText(config.playerNames[player] + " (" + millies / 1000 + ")");
                 this.playersTable[0][player].setForeground(Color.RED);
@@ -243,10 +556,7 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
                 this.playersTable[0][player].setText(config.playerNames[player]);
                 this.playersTable[0][player].setForeground(Color.BLACK);
             }
-        }
-
-        private void setScore(int player, int score) {
-            playersTable[1][player].setText(Integer.toString(score));
+            playersTable[1][player].setText(Integer.toString(scores[player]));
         }
     }
 
@@ -276,63 +586,74 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
     @Override
     public void placeCard(int card, int slot) {
-        gamePanel.placeCard(slot, card);
+        pending.placeCard(card, slot);
     }
 
     @Override
     public void removeCard(int slot) {
-        gamePanel.removeCard(slot);
+        pending.removeCard(slot);
     }
 
     @Override
     public void placeToken(int player, int slot) {
-        gamePanel.placeToken(player, slot);
+        pending.setToken(player, slot, true);
     }
 
     @Override
     public void removeTokens() {
-        gamePanel.removeTokens();
+        pending.removeTokens();
     }
 
     @Override
     public void removeTokens(int slot) {
-        gamePanel.removeTokens(slot);
+        pending.removeTokens(slot);
     }
 
     @Override
     public void removeToken(int player, int slot) {
-        gamePanel.removeToken(player, slot);
+        pending.setToken(player, slot, false);
     }
 
     @Override
     public void setCountdown(long millies, boolean warn) {
-        timerPanel.setCountdown(millies, warn);
+        pending.setTimer(TimerPanel.COUNTDOWN, millies, warn ? 1 : 0);
     }
 
     @Override
     public void setElapsed(long millies) {
-        timerPanel.setElapsed(millies);
+        pending.setTimer(TimerPanel.ELAPSED, millies, 0);
+    }
+
+    @Override
+    public void setCountdownDeadline(long deadline, long warnMillis) {
+        pending.setTimer(TimerPanel.COUNTDOWN_TO, deadline, warnMillis);
+    }
+
+    @Override
+    public void setElapsedSince(long start) {
+        pending.setTimer(TimerPanel.ELAPSED_SINCE, start, 0);
     }
 
     @Override
     public void setFreeze(int player, long millies) {
-        playersPanel.setFreeze(player, millies);
+        pending.setFreeze(player, millies);
     }
 
     @Override
     public void setScore(int player, int score) {
-        playersPanel.setScore(player, score);
+        pending.setScore(player, score);
     }
 
     @Override
     public void announceWinner(int[] players) {
-        playersPanel.setVisible(false);
-        winnerPanel.announceWinner(players);
-        winnerPanel.setVisible(true);
+        pending.announceWinner(players);
     }
 
     @Override
     public void dispose() {
-        super.dispose();
+        if (frameTimer != null) frameTimer.stop();
+        timerPanel.animation.stop();
+        monitor.stop();
+        EventQueue.invokeLater(super::dispose);
     }
 }
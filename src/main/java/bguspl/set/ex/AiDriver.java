@@ -0,0 +1,115 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The main loop of a computer player's ai thread: plays the key presses its strategy plans for the player.
+ * While the player cannot act (the dealer is reshuffling, the player's set is in check or the player is frozen) the
+ * thread parks until one of those events ends and wakes it up, instead of pressing keys that are ignored.
+ */
+class AiDriver implements Runnable {
+
+    /**
+     * The time to wait before asking the strategy again when it had nothing to do.
+     */
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * Game entities.
+     */
+    private final Player player;
+    private final Table table;
+
+    /**
+     * Decides which keys to press.
+     */
+    private final ComputerStrategy strategy;
+
+    /**
+     * The minimal time between key presses (0 for no limit), see Config.computerKeyPressesPerSecond.
+     */
+    private final long pressIntervalNanos;
+
+    /**
+     * The time the strategy may spend on a decision, see Config.computerDecisionBudgetMicros.
+     */
+    private final long budgetNanos;
+
+    /**
+     * The current plan: the table snapshot it was made for and the key presses.
+     */
+    private final int[] slotToCard;
+    private final int[] presses;
+
+    /**
+     * The ai thread (null until it starts).
+     */
+    private volatile Thread thread;
+
+    AiDriver(Env env, Player player, Table table, ComputerStrategy strategy) {
+        this.env = env;
+        this.player = player;
+        this.table = table;
+        this.strategy = strategy;
+        double rate = env.config.computerKeyPressesPerSecond;
+        this.pressIntervalNanos = rate > 0 ? (long) (1000000000L / rate) : 0;
+        this.budgetNanos = TimeUnit.MICROSECONDS.toNanos(env.config.computerDecisionBudgetMicros);
+        this.slotToCard = new int[env.config.tableSize];
+        this.presses = new int[2 * env.config.featureSize];
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
+        long nextPress = System.nanoTime();
+        long planVersion = 0;
+        int planned = 0;
+        int played = 0;
+        while (!player.isTerminated()) {
+            if (!player.canAct()) {
+                planned = played = 0;
+                LockSupport.park(this); //woken up when the reshuffle, the check or the freeze ends
+                continue;
+            }
+            if (played == planned) {
+                planVersion = table.snapshot(slotToCard);
+                planned = strategy.decide(slotToCard, player.getChosenSlots(), presses, budgetNanos);
+                played = 0;
+                long reaction = strategy.reactionNanos();
+                if (planned == 0) {
+                    LockSupport.parkNanos(this, Math.max(reaction, IDLE_NANOS));
+                    continue;
+                }
+                nextPress = Math.max(nextPress, System.nanoTime() + reaction);
+            }
+            if (table.getVersion() != planVersion) {
+                planned = played = 0; //the table changed, plan again
+                continue;
+            }
+            long wait = nextPress - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            nextPress = System.nanoTime() + pressIntervalNanos;
+            player.keyPressed(presses[played++]);
+        }
+        env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
+    }
+
+    /**
+     * Wakes up the ai thread to check whether the player can act again.
+     */
+    void wake() {
+        LockSupport.unpark(thread);
+    }
+}
@@ -1,75 +1,134 @@
 package bguspl.set.ex;
 
-import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import bguspl.set.Env;
 
 public class ChosenSlots{
 
     /**
-     * the slots on which a player has tokens
+     * the slots on which a player has tokens, one bit per slot (slot i is bit i % 64 of word i / 64)
      */
-    private Vector<Integer> slotsVector;
+    private final AtomicLongArray slotsMask;
 
     /**
      * Game entities.
      */
     Table table;
     final int featureSize;
-    
+
+    /**
+     * buffers reused by convertToSet
+     */
+    private final int[] slotsBuffer;
+    private final int[] cardsBuffer;
+
     public ChosenSlots(Table table, Env env) {
-        this.slotsVector = new Vector<>();
+        this.slotsMask = new AtomicLongArray(words(env.config.tableSize));
         this.table = table;
         this.featureSize = env.config.featureSize;
+        this.slotsBuffer = new int[featureSize];
+        this.cardsBuffer = new int[featureSize];
     }
-    
-    public synchronized Vector<Integer> getSlotsVector() {
-        return slotsVector;
+
+    /**
+     * @param tableSize - the number of slots.
+     * @return          - the number of words in a slot mask.
+     */
+    public static int words(int tableSize){
+        return (tableSize + Long.SIZE - 1) / Long.SIZE;
     }
-    
-    public synchronized boolean contains(int slot){
-        return slotsVector.contains(slot); 
+
+    public boolean contains(int slot){
+        return (slotsMask.get(slot / Long.SIZE) & bit(slot)) != 0;
+    }
+
+    public int size(){
+        int size = 0;
+        for (int i = 0; i < slotsMask.length(); i++) {
+            size += Long.bitCount(slotsMask.get(i));
+        }
+        return size;
     }
 
-    public synchronized int size(){
-        return slotsVector.size();
+    public void clear() {
+        for (int i = 0; i < slotsMask.length(); i++) {
+            slotsMask.set(i, 0);
+        }
     }
 
-    public synchronized void clear() {
-        slotsVector.clear();
+    public void add(int slot){
+        slotsMask.accumulateAndGet(slot / Long.SIZE, bit(slot), (word, bit) -> word | bit);
     }
 
-    public synchronized void add(int slot){
-        slotsVector.add(slot);
+    public void remove(int slot){
+        slotsMask.accumulateAndGet(slot / Long.SIZE, bit(slot), (word, bit) -> word & ~bit);
     }
 
-    public synchronized void remove(int slot){ 
-        if(slotsVector.contains(slot)){
-            slotsVector.remove(slotsVector.indexOf(slot));  
+    /**
+     * Removes many slots at once, e.g. all the slots whose cards were just removed from the table.
+     *
+     * @param mask - the slots to remove, in the same layout as slotsMask (see words).
+     */
+    public void removeAll(long[] mask){
+        for (int i = 0; i < mask.length; i++) {
+            if (mask[i] != 0) {
+                slotsMask.accumulateAndGet(i, mask[i], (word, removed) -> word & ~removed);
+            }
         }
     }
 
-    public synchronized int[] convertToSet(){
-        if (size() == featureSize) {
-            return slotsToCards(setToArr(slotsVector));
-        } 
+    /**
+     * @param index - the index of a word in the mask (see words).
+     * @return      - 64 slots of the mask: slot index * 64 + i is chosen iff bit i is set.
+     */
+    public long word(int index){
+        return slotsMask.get(index);
+    }
+
+    /**
+     * Converts the chosen slots to the cards placed in them.
+     * The returned array is reused by the next call, copy it if it should be kept.
+     *
+     * @return - the cards in the chosen slots, or null if the player does not have a full set of tokens.
+     */
+    public int[] convertToSet(){
+        if (getSlots(slotsBuffer) == featureSize && size() == featureSize) {
+            return slotsToCards(slotsBuffer);
+        }
         return null;
     }
 
-    private int[] slotsToCards(int[] slots){
-        int[]cards = new int[slots.length];
-        for (int i = 0; i < cards.length; i++) {
-            cards[i] = table.getSlotToCard()[slots[i]];
+    /**
+     * Copies the chosen slots into a buffer of the caller, so nothing is allocated.
+     *
+     * @param into - the array to fill with the chosen slots (ascending).
+     * @return     - the number of slots written, at most into.length.
+     */
+    public int getSlots(int[] into){
+        int count = 0;
+        for (int i = 0; i < slotsMask.length() && count < into.length; i++) {
+            long word = slotsMask.get(i);
+            while (word != 0 && count < into.length) {
+                into[count++] = i * Long.SIZE + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
         }
-        return cards;
+        return count;
     }
 
-    private int[] setToArr(Vector<Integer> vec){
-        int[] res = new int[featureSize];
-        for (int i = 0; i < res.length; i++) {
-            res[i] = vec.get(i);
+    private int[] slotsToCards(int[] slots){
+        for (int i = 0; i < cardsBuffer.length; i++) {
+            Integer card = table.getSlotToCard()[slots[i]];
+            if (card == null) {
+                return null; //the card was removed, there is no set
+            }
+            cardsBuffer[i] = card;
         }
-        return res;
+        return cardsBuffer;
     }
 
-}
\ No newline at end of file
+    private static long bit(int slot){
+        return 1L << (slot % Long.SIZE);
+    }
+}
@@ -0,0 +1,142 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small pool of verifier threads that test the players' declared sets in parallel (optional, see
+ * Config.verifierThreads). The verifiers never change the table: they only snapshot the declared set together with
+ * the table version it was read at, and the dealer commits the verdict if the table has not changed since.
+ */
+class ClaimVerifier {
+
+    /**
+     * A set declared by a player, after it was tested.
+     */
+    static class Claim {
+
+        final Player player;
+
+        /**
+         * The cards of the declared set (null if the player no longer has a full set of tokens).
+         */
+        final int[] cards;
+
+        /**
+         * The table version the cards were read at.
+         */
+        final long tableVersion;
+
+        /**
+         * True iff the cards form a legal set.
+         */
+        final boolean isSet;
+
+        Claim(Player player, int[] cards, long tableVersion, boolean isSet) {
+            this.player = player;
+            this.cards = cards;
+            this.tableVersion = tableVersion;
+            this.isSet = isSet;
+        }
+    }
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * Game entities.
+     */
+    private final Table table;
+
+    /**
+     * Measures how long the claims wait for a verifier thread and how long testing them takes.
+     */
+    private final LatencyTracer tracer;
+
+    /**
+     * The verifier threads.
+     */
+    private final ExecutorService pool;
+
+    /**
+     * Claims that were tested and wait for the dealer to commit them.
+     */
+    private final Queue<Claim> verified = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Called after each claim is tested (wakes up the dealer).
+     */
+    private final Runnable onVerified;
+
+    ClaimVerifier(Env env, Table table, LatencyTracer tracer, int threads, Runnable onVerified) {
+        this.env = env;
+        this.table = table;
+        this.tracer = tracer;
+        this.onVerified = onVerified;
+        AtomicInteger count = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "verifier-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues the set a player declared to be tested by one of the verifier threads.
+     *
+     * @param player - the player that declared a set.
+     */
+    void submit(Player player) {
+        pool.execute(() -> {
+            verified.add(verify(player));
+            onVerified.run();
+        });
+    }
+
+    /**
+     * Tests the set a player declared. May be called by any thread.
+     *
+     * @param player - the player that declared a set.
+     * @return       - the tested claim.
+     */
+    Claim verify(Player player) {
+        long verifying = tracer.claimVerifying(player.id);
+        long stamp, version;
+        int[] cards;
+        do { // the dealer may be changing the table, read the set again until it is not torn
+            stamp = table.tryOptimisticRead();
+            version = table.getVersion();
+            cards = player.getChosenSlots().convertToSet();
+        } while (!table.validate(stamp));
+        if (cards != null) cards = Arrays.copyOf(cards, cards.length);
+        boolean isSet = cards != null && env.util.testSet(cards);
+        tracer.claimVerified(verifying);
+        return new Claim(player, cards, version, isSet);
+    }
+
+    /**
+     * @return - true iff there are tested claims the dealer did not poll yet.
+     */
+    boolean hasVerified() {
+        return !verified.isEmpty();
+    }
+
+    /**
+     * @return - the next tested claim, or null if there is none.
+     */
+    Claim poll() {
+        return verified.poll();
+    }
+
+    void shutdown() {
+        pool.shutdownNow();
+    }
+}
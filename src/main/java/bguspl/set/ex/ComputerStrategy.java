@@ -0,0 +1,46 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+/**
+ * Decides which keys a computer player presses. The ai thread (see AiDriver) asks the strategy for a plan whenever
+ * the previous one was played or the table changed, and plays it after the strategy's reaction time.
+ */
+public interface ComputerStrategy {
+
+    /**
+     * Plans the next key presses of the player.
+     *
+     * @param slotToCard  - a snapshot of the table: the card in each slot, or Table.NO_CARD if the slot is empty.
+     * @param chosen      - the slots the player has tokens on.
+     * @param presses     - filled with the slots to press, in order (has room for 2 * featureSize presses).
+     * @param budgetNanos - the time the decision may take (wall clock, it includes the time the thread is not
+     *                      scheduled), the strategy should give up once it is spent.
+     * @return            - the number of presses planned, 0 if there is nothing to do for now.
+     */
+    int decide(int[] slotToCard, ChosenSlots chosen, int[] presses, long budgetNanos);
+
+    /**
+     * @return - the time to wait before playing a new plan, in nanoseconds.
+     */
+    long reactionNanos();
+
+    /**
+     * Creates the strategy configured for computer players (see Config.computerStrategy).
+     *
+     * @param env    - the game environment object.
+     * @param engine - the set lookups shared by all the players.
+     * @return       - a new strategy, one per computer player.
+     */
+    static ComputerStrategy create(Env env, SetEngine engine) {
+        switch (env.config.computerStrategy) {
+            case "set":
+                return new SetSeekingStrategy(env, engine);
+            case "random":
+                return new RandomStrategy(env);
+            default:
+                env.logger.severe("unknown computer strategy " + env.config.computerStrategy + ", using random.");
+                return new RandomStrategy(env);
+        }
+    }
+}
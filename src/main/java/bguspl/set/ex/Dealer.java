@@ -2,7 +2,9 @@ package bguspl.set.ex;
 
 import bguspl.set.Env;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -56,6 +58,11 @@ public class Dealer implements Runnable {
      */
     private Vector<Integer> slotsToRemove = new Vector<>();
 
+    /**
+     * mask of the slots removed by removeCardsFromTable (see ChosenSlots.removeAll)
+     */
+    private final long[] removedSlots;
+
     /**
      * queue of players that have sets to check
      */
@@ -69,9 +76,7 @@ public class Dealer implements Runnable {
     /**
      * useful finals 
      */
-    final int TEN_MILI_SEC = 10;
     final int ONE_SECOND = 1000;
-    final int HALF_SECOND = 500;
     final int ILLEGAL = -1;
 
     /**
@@ -90,6 +95,26 @@ public class Dealer implements Runnable {
      */
     private long lastAction;
 
+    /**
+     * fast set lookups, used to check for sets and to deal a table that has one
+     */
+    private final SetEngine setEngine;
+
+    /**
+     * tests the declared sets in parallel, null if the dealer tests them itself (see Config.verifierThreads)
+     */
+    private final ClaimVerifier verifier;
+
+    /**
+     * measures the latency of the players' key presses and sets (see Config.latencyTraceSampling)
+     */
+    private final LatencyTracer tracer;
+
+    /**
+     * connects the external players to their out-of-process bot, null if there are none (see Config.externalPlayers)
+     */
+    private volatile SharedMemoryBridge bridge;
+
 
     public Dealer(Env env, Table table, Player[] players) {
         this.env = env;
@@ -99,7 +124,11 @@ public class Dealer implements Runnable {
         this.playersToCheck = new ArrayBlockingQueue<>(players.length);
         cardsInDeckAndTable.addAll(deck);
         this.tableSize = env.config.tableSize;
+        this.removedSlots = new long[ChosenSlots.words(tableSize)];
         lastAction = env.config.turnTimeoutMillis;
+        this.setEngine = new SetEngine(env.config);
+        this.tracer = new LatencyTracer(env.config.latencyTraceSampling, players.length);
+        this.verifier = env.config.verifierThreads > 0 ? new ClaimVerifier(env, table, tracer, env.config.verifierThreads, this::wakeUp) : null;
     }
 
     /**
@@ -108,8 +137,19 @@ public class Dealer implements Runnable {
     @Override
     public void run() {
         env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
+        if (env.config.externalPlayers > 0) {
+            try {
+                bridge = new SharedMemoryBridge(env, table, players, env.config.humanPlayers, env.config.externalPlayers);
+                bridge.start();
+            } catch (IOException e) {
+                env.logger.severe("cannot share " + env.config.externalPlayersFile + " with the bot: " + e);
+            }
+        }
+        if (env.config.virtualThreads && !GameThreads.virtualThreadsSupported()) {
+            env.logger.warning("virtual threads need java 21 or newer, using platform threads.");
+        }
         for (Player player : players) {
-            new Thread(player).start();
+            GameThreads.start(env, player, "player-" + player.id);
             synchronized(player.waitForAi){
                 if(!player.aiStarted){
                     try {
@@ -121,6 +161,9 @@ public class Dealer implements Runnable {
         while (!shouldFinish()) {
             placeCardsOnTable();
             dealerIsReshuffling=false;
+            for (Player player : players) {
+                player.wakeAi();
+            }
             dealerShouldReshuffle=false;
             updateTimerDisplay(true);
             timerLoop();
@@ -149,18 +192,18 @@ public class Dealer implements Runnable {
     }
 
     /**
-     * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
+     * Sleep until the countdown times out or the thread is awakened for some purpose (a set to check, or terminate).
+     * The user interface animates the countdown by itself, so there is no need to wake up for it.
      */
     private void sleepUntilWokenOrTimeout() {
         synchronized(waitOnObject){
-            if(System.currentTimeMillis() + env.config.turnTimeoutWarningMillis >= reshuffleTime){
-                try {
-                    waitOnObject.wait(TEN_MILI_SEC);
-                } catch (InterruptedException e) {}
-            }else{
-                try {
-                    waitOnObject.wait(HALF_SECOND);
-                } catch (InterruptedException e) {}
+            if(!hasSetsToCheck() && !terminate){
+                long timeout = env.config.turnTimeoutMillis > 0 ? reshuffleTime - System.currentTimeMillis() : ONE_SECOND;
+                if(timeout > 0){
+                    try {
+                        waitOnObject.wait(timeout);
+                    } catch (InterruptedException e) {}
+                }
             }
             checkPlayersSets();
         }
@@ -175,15 +218,24 @@ public class Dealer implements Runnable {
         try {
             env.ui.dispose();
         } catch (Exception e) {}
-        //join the players' threads in reverse order
-        for (int i = players.length - 1; i >= 0; i--) { 
-            players[i].terminate();
-            try {
-                players[i].getPlayerThread().interrupt();
-                players[i].getPlayerThread().join();
-            } catch (InterruptedException e) {};
+        if (bridge != null) {
+            bridge.shutdown();
+        }
+        //signal all the players' threads at once and join them in reverse order
+        new ShutdownCoordinator(env).shutdown(players);
+        for (Player player : players) {
+            long dropped = player.getDroppedKeyPresses();
+            if (dropped > 0) {
+                env.logger.warning("player " + player.id + " dropped " + dropped + " key presses (queue full).");
+            }
+        }
+        if(verifier != null){
+            verifier.shutdown();
         }
+        TimerWheel.stopShared(env.config.shutdownTimeoutMillis);
+        tracer.report(env.logger);
         terminate = true;
+        wakeUp();
     }
 
     /**
@@ -191,19 +243,38 @@ public class Dealer implements Runnable {
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        return terminate || env.util.findSets(cardsInDeckAndTable, 1).size() == 0;
+        return terminate || setEngine.findSet(cardsInDeckAndTable) == null;
+    }
+
+    /**
+     * @return - the set lookups shared by the dealer and the computer players.
+     */
+    public SetEngine getSetEngine() {
+        return setEngine;
+    }
+
+    /**
+     * @return - the latency tracer shared by the dealer and the players.
+     */
+    public LatencyTracer getTracer() {
+        return tracer;
     }
 
     /**
      * Checks cards should be removed from the table and removes them.
      */
     private void removeCardsFromTable() {
+        if (slotsToRemove.isEmpty()){
+            return;
+        }
+        Arrays.fill(removedSlots, 0);
         while (slotsToRemove.size() != 0){
             int slot=slotsToRemove.remove(0);
             table.removeCard(slot);
-            for(int i = 0; i<players.length; i++){
-                players[i].getChosenSlots().remove(slot); 
-            }
+            removedSlots[slot / Long.SIZE] |= 1L << (slot % Long.SIZE);
+        }
+        for(int i = 0; i<players.length; i++){
+            players[i].getChosenSlots().removeAll(removedSlots); 
         }
     }
 
@@ -212,6 +283,9 @@ public class Dealer implements Runnable {
      */
     private void placeCardsOnTable() {
         Collections.shuffle(deck);
+        if(env.config.turnTimeoutMillis <= 0){
+            arrangeDeckForSet();
+        }
         if(table.countCards() == 0){
             placeAllSlots();
         }
@@ -239,6 +313,32 @@ public class Dealer implements Runnable {
         }
     }
 
+    /**
+     * Used when there is no countdown: moves cards to the top of the deck so that after the empty slots are filled
+     * the table contains a set, instead of finding out after dealing and reshuffling.
+     */
+    private void arrangeDeckForSet(){
+        int emptySlots = tableSize - table.countCards();
+        if(emptySlots <= 0 || deck.isEmpty()){
+            return;
+        }
+        List<Integer> onTable = table.getCardsOnTable();
+        List<Integer> toDeal = new ArrayList<>(onTable);
+        toDeal.addAll(deck.subList(0, Math.min(emptySlots, deck.size())));
+        if(setEngine.findSet(toDeal) != null){
+            return; //the regular deal already has a set
+        }
+        int[] set = setEngine.findSet(onTable, deck, emptySlots);
+        if(set == null){
+            return; //no set can be made, the game is about to end
+        }
+        for (int card : set) {
+            if(deck.remove((Integer) card)){
+                deck.add(0, card);
+            }
+        }
+    }
+
     private int findEmptySlot(){
         for (int i = 0; i < table.getSlotToCard().length; i++) {
             if(table.getSlotToCard()[i] == null){
@@ -254,22 +354,15 @@ public class Dealer implements Runnable {
      */
     private void updateTimerDisplay(boolean reset) {
         if(env.config.turnTimeoutMillis > 0){
-            if(reset){
+            if(reset){ //only the deadline is published, the user interface counts down to it by itself
                 reshuffleTime = env.config.turnTimeoutMillis + System.currentTimeMillis(); 
-                env.ui.setCountdown(env.config.turnTimeoutMillis, false);
-            }
-            else{
-                long timeLeft = reshuffleTime - System.currentTimeMillis();
-                boolean warn = timeLeft < env.config.turnTimeoutWarningMillis;
-                env.ui.setCountdown(timeLeft, warn);
+                env.ui.setCountdownDeadline(reshuffleTime, env.config.turnTimeoutWarningMillis);
             }
         }
         else{
-            if(env.config.turnTimeoutMillis == 0){
-                if(reset){
-                    lastAction = System.currentTimeMillis();
-                }
-                env.ui.setElapsed(System.currentTimeMillis() - lastAction);
+            if(env.config.turnTimeoutMillis == 0 && reset){
+                lastAction = System.currentTimeMillis();
+                env.ui.setElapsedSince(lastAction);
             }
             if(table.hasNoSetOnTable()){
                 dealerShouldReshuffle = true;
@@ -332,48 +425,107 @@ public class Dealer implements Runnable {
     }
 
     public void addPlayerToCheck(Player player){
+        if(verifier != null){
+            verifier.submit(player); //the dealer is woken up once the set was tested
+            return;
+        }
         try {
             playersToCheck.put(player);
         } catch (InterruptedException e) {}
+        wakeUp();
+    }
+
+    /**
+     * @return true iff there are declared sets the dealer did not commit yet (called while holding waitOnObject, so a
+     * set declared after this check wakes the dealer up).
+     */
+    private boolean hasSetsToCheck(){
+        return verifier != null ? verifier.hasVerified() : !playersToCheck.isEmpty();
+    }
+
+    private void wakeUp(){
         synchronized(waitOnObject){
             waitOnObject.notifyAll();
         }
     }
 
     public void checkPlayersSets(){
+        if(verifier != null){
+            commitVerifiedClaims();
+            return;
+        }
         Player curPlayer;
         int[] curSet;
         while(!playersToCheck.isEmpty()){
             try {
                 curPlayer = playersToCheck.take();
+                long verifying = tracer.claimVerifying(curPlayer.id);
                 curSet = curPlayer.getChosenSlots().convertToSet();
-
-                if (curSet == null) {
-                    curPlayer.keyPressed(Player.CONTINUEPLAY_MSG);
-                } else if(testSet(curSet)){
-                    removeCardsFromTable();
-                    placeCardsOnTable();
-                    curPlayer.keyPressed(Player.POINT_MSG);
-                    updateTimerDisplay(true);
-                    for (Integer card : curSet) {
-                        cardsInDeckAndTable.remove(card);
-                    }
-                } else{
-                    curPlayer.keyPressed(Player.PENALTY_MSG);;
-                }
+                boolean isSet = curSet != null && testSet(curSet);
+                tracer.claimVerified(verifying);
+                commitVerdict(curPlayer, curSet, isSet);
             } catch (InterruptedException e) {}
         }
     }
 
+    /**
+     * Commits the sets tested by the verifier threads. Only the dealer changes the table, so a claim tested at the
+     * current table version is still valid; older claims are tested again here.
+     */
+    private void commitVerifiedClaims(){
+        ClaimVerifier.Claim claim;
+        while((claim = verifier.poll()) != null){
+            if(claim.tableVersion != table.getVersion()){
+                claim = verifier.verify(claim.player);
+            }
+            if(claim.isSet){
+                markForRemoval(claim.cards);
+            }
+            commitVerdict(claim.player, claim.cards, claim.isSet);
+        }
+    }
+
+    /**
+     * Updates the table according to a tested set and posts the verdict to the player.
+     *
+     * @param curPlayer - the player that declared the set.
+     * @param curSet    - the cards of the set, null if the player no longer has a full set of tokens.
+     * @param isSet     - true iff the cards form a legal set (and were marked for removal).
+     */
+    private void commitVerdict(Player curPlayer, int[] curSet, boolean isSet){
+        if (!isSet) {
+            table.releaseSlots(curPlayer.id); //the slots of a legal set are released when its cards are removed
+        }
+        if (curSet == null) {
+            tracer.verdictPosted(curPlayer.id);
+            curPlayer.postVerdict(Player.CONTINUEPLAY_MSG);
+        } else if(isSet){
+            removeCardsFromTable();
+            placeCardsOnTable();
+            tracer.verdictPosted(curPlayer.id);
+            curPlayer.postVerdict(Player.POINT_MSG);
+            updateTimerDisplay(true);
+            for (Integer card : curSet) {
+                cardsInDeckAndTable.remove(card);
+            }
+        } else{
+            tracer.verdictPosted(curPlayer.id);
+            curPlayer.postVerdict(Player.PENALTY_MSG);
+        }
+    }
 
     public boolean testSet(int[]cards){
         if(env.util.testSet(cards)){
-            for (int i = 0; i < cards.length; i++) {
-                slotsToRemove.add(table.getCardToSlot()[cards[i]]);
-            }
+            markForRemoval(cards);
             return true;
         }
        return false;
     }
 
+    private void markForRemoval(int[] cards){
+        for (int i = 0; i < cards.length; i++) {
+            slotsToRemove.add(table.getCardToSlot()[cards[i]]);
+        }
+    }
+
 }
@@ -0,0 +1,78 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.lang.reflect.Method;
+
+/**
+ * Starts the player and ai threads, either as platform threads (the default) or, when Config.virtualThreads is set
+ * and the jvm supports them (java 21 and up), as virtual threads.
+ * Virtual threads are created through reflection so the game still compiles and runs on java 8.
+ * The player and ai loops wait with LockSupport.park (see IntRingBuffer and AiDriver), which does not pin their
+ * carrier threads. They still enter the table's monitor to place and remove tokens, and a virtual thread that waits
+ * for a monitor is pinned on java 21; the dealer holds it only for the changes themselves (the table delay is slept
+ * outside it), so the time pinned stays short.
+ */
+final class GameThreads {
+
+    /**
+     * Thread.ofVirtual(), Thread.Builder.name(String) and Thread.Builder.start(Runnable), or null on older jvms.
+     */
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME;
+    private static final Method START;
+
+    static {
+        Method ofVirtual = null, name = null, start = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class);
+            start = builder.getMethod("start", Runnable.class);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        START = start;
+    }
+
+    private GameThreads() {}
+
+    /**
+     * @return - true iff the jvm can run virtual threads.
+     */
+    static boolean virtualThreadsSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @param env - the game environment object.
+     * @return    - true iff the game threads are started as virtual threads.
+     */
+    static boolean useVirtualThreads(Env env) {
+        return env.config.virtualThreads && virtualThreadsSupported();
+    }
+
+    /**
+     * Starts a new game thread.
+     *
+     * @param env  - the game environment object.
+     * @param task - the main loop of the thread.
+     * @param name - the name of the thread.
+     * @return     - the started thread.
+     */
+    static Thread start(Env env, Runnable task, String name) {
+        if (useVirtualThreads(env)) {
+            try {
+                Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), name);
+                return (Thread) START.invoke(builder, task);
+            } catch (ReflectiveOperationException e) {
+                env.logger.warning("cannot start virtual thread " + name + ", using a platform thread: " + e);
+            }
+        }
+        Thread thread = new Thread(task, name);
+        thread.start();
+        return thread;
+    }
+}
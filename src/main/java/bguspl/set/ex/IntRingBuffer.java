@@ -0,0 +1,210 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A bounded queue of primitive ints for one producer thread and one consumer thread.
+ * It does not lock and does not allocate; a thread that has to wait (for space or for elements) spins, then yields
+ * and only then parks until the other side wakes it up. The producer may also drop the oldest element instead of
+ * waiting (see offerDropOldest), which is why the head is advanced with CAS.
+ */
+public class IntRingBuffer {
+
+    /**
+     * Returned by poll when the buffer is empty.
+     */
+    public static final int EMPTY = Integer.MIN_VALUE;
+
+    /**
+     * Wait strategy: the number of busy spins and then yields before parking.
+     */
+    private static final int SPINS = 100;
+    private static final int YIELDS = 10;
+
+    private final int[] buffer;
+    private final int capacity;
+
+    /**
+     * The sequence of the next element to take (advanced by the consumer, and by the producer when dropping).
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The sequence of the next element to put (written by the producer only).
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The producer/consumer thread parked in the wait strategy (null if none).
+     */
+    private volatile Thread producerWaiter;
+    private volatile Thread consumerWaiter;
+
+    /**
+     * @param capacity - the maximum number of elements in the buffer.
+     */
+    public IntRingBuffer(int capacity) {
+        this.capacity = capacity;
+        this.buffer = new int[capacity];
+    }
+
+    /**
+     * Adds an element if there is space. Producer only.
+     *
+     * @param value - the element to add.
+     * @return      - true iff the element was added.
+     */
+    public boolean offer(int value) {
+        long t = tail.get();
+        if (t - head.get() == capacity) return false;
+        buffer[(int) (t % capacity)] = value;
+        tail.set(t + 1);
+        LockSupport.unpark(consumerWaiter);
+        return true;
+    }
+
+    /**
+     * Adds an element, waiting for space if the buffer is full. Producer only.
+     *
+     * @param value - the element to add.
+     * @throws InterruptedException - if the producer is interrupted while waiting.
+     */
+    public void put(int value) throws InterruptedException {
+        int idle = 0;
+        while (!offer(value)) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            idle = idle(idle, true);
+        }
+    }
+
+    /**
+     * Takes the next element. Consumer only.
+     *
+     * @return - the next element, or EMPTY if the buffer is empty.
+     */
+    public int poll() {
+        while (true) {
+            long h = head.get();
+            if (h == tail.get()) return EMPTY;
+            int value = buffer[(int) (h % capacity)];
+            if (head.compareAndSet(h, h + 1)) { // fails if the producer dropped the element meanwhile
+                LockSupport.unpark(producerWaiter);
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Takes all the elements that fit in the given array. Consumer only.
+     *
+     * @param into - the array to copy the elements to.
+     * @return     - the number of elements taken.
+     */
+    public int drainTo(int[] into) {
+        while (true) {
+            long h = head.get();
+            int count = (int) Math.min(tail.get() - h, into.length);
+            if (count == 0) return 0;
+            for (int i = 0; i < count; i++)
+                into[i] = buffer[(int) ((h + i) % capacity)];
+            if (head.compareAndSet(h, h + count)) { // fails if the producer dropped an element meanwhile
+                LockSupport.unpark(producerWaiter);
+                return count;
+            }
+        }
+    }
+
+    /**
+     * Removes all the elements. Consumer only.
+     */
+    public void clear() {
+        long h;
+        do {
+            h = head.get();
+        } while (!head.compareAndSet(h, Math.max(h, tail.get())));
+        LockSupport.unpark(producerWaiter);
+    }
+
+    /**
+     * Adds an element, dropping the oldest element if the buffer is full. Producer only, never waits.
+     *
+     * @param value - the element to add.
+     * @return      - true iff the oldest element was dropped to make room.
+     */
+    public boolean offerDropOldest(int value) {
+        boolean dropped = false;
+        while (!offer(value)) {
+            long h = head.get();
+            if (tail.get() - h == capacity && head.compareAndSet(h, h + 1))
+                dropped = true;
+        }
+        return dropped;
+    }
+
+    /**
+     * Checks if an element is in the buffer. Producer only; the consumer may take it right after.
+     *
+     * @param value - the element to look for.
+     * @return      - true iff the element is in the buffer.
+     */
+    public boolean contains(int value) {
+        long t = tail.get();
+        for (long i = head.get(); i < t; i++)
+            if (buffer[(int) (i % capacity)] == value) return true;
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Waits until the buffer is not empty or the wake up condition holds. Consumer only.
+     * Other threads may wake the consumer up with LockSupport.unpark after making the condition true.
+     *
+     * @param wakeUp - checked between waits, the wait ends once it returns true.
+     */
+    public void awaitNotEmpty(BooleanSupplier wakeUp) {
+        int idle = 0;
+        while (isEmpty() && !wakeUp.getAsBoolean())
+            idle = idle(idle, false);
+    }
+
+    /**
+     * A single step of the wait strategy.
+     *
+     * @param idle     - the number of steps waited so far.
+     * @param producer - true if the producer is waiting for space, false if the consumer is waiting for elements.
+     * @return         - the number of steps waited so far, including this one.
+     */
+    private int idle(int idle, boolean producer) {
+        if (idle < SPINS) {
+            return idle + 1;
+        }
+        if (idle < SPINS + YIELDS) {
+            Thread.yield();
+            return idle + 1;
+        }
+        // register before checking again, so a wake up between the check and the park is not lost
+        if (producer) {
+            producerWaiter = Thread.currentThread();
+            if (size() == capacity) LockSupport.park(this);
+            producerWaiter = null;
+        } else {
+            consumerWaiter = Thread.currentThread();
+            if (isEmpty()) LockSupport.park(this);
+            consumerWaiter = null;
+        }
+        return idle;
+    }
+}
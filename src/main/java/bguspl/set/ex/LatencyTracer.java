@@ -0,0 +1,203 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+/**
+ * Measures how long key presses and declared sets spend in each stage on their way from the keyboard to the screen,
+ * in a LogHistogram per stage. Only one of every Config.latencyTraceSampling key presses and sets is traced.
+ * The stamps of the traced key press and set of each player are kept in arrays indexed by the player id, so tracing
+ * does not allocate.
+ */
+public class LatencyTracer {
+
+    /**
+     * The stages a key press or a declared set goes through.
+     */
+    public enum Stage {
+        /** a keyboard event from its creation until the ui thread dispatched it to the player (millisecond precision) */
+        INPUT,
+        /** a key press in the player's queue, until the player thread took it */
+        QUEUE,
+        /** the key press that completed a set, from the player thread taking it until the set was declared */
+        DECLARE,
+        /** a declared set, until the dealer or a verifier thread started testing it */
+        DISPATCH,
+        /** testing a declared set */
+        VERIFY,
+        /** a verdict, from the dealer posting it until the player updated the ui */
+        VERDICT,
+        /** a declared set, until the player updated the ui with the verdict */
+        CLAIM
+    }
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    /**
+     * A tracer that traces nothing.
+     */
+    static final LatencyTracer NONE = new LatencyTracer(0, 0);
+
+    /**
+     * Trace one of every sampling key presses (and sets) of each player, 0 for none.
+     */
+    private final int sampling;
+
+    private final LogHistogram[] histograms = new LogHistogram[Stage.values().length];
+
+    /**
+     * The number of key presses and sets of each player so far, to pick the ones to trace.
+     */
+    private final AtomicLongArray keys;
+    private final AtomicLongArray claims;
+
+    /**
+     * The stamps (System.nanoTime) of the traced key press and set of each player, 0 if there is none.
+     */
+    private final AtomicLongArray offered;
+    private final AtomicLongArray taken;
+    private final AtomicLongArray declared;
+    private final AtomicLongArray dispatched;
+    private final AtomicLongArray posted;
+
+    /**
+     * @param sampling - trace one of every sampling key presses and sets of each player (0 for none).
+     * @param players  - the number of players.
+     */
+    public LatencyTracer(int sampling, int players) {
+        this.sampling = sampling;
+        for (int i = 0; i < histograms.length; i++)
+            histograms[i] = new LogHistogram();
+        keys = new AtomicLongArray(players);
+        claims = new AtomicLongArray(players);
+        offered = new AtomicLongArray(players);
+        taken = new AtomicLongArray(players);
+        declared = new AtomicLongArray(players);
+        dispatched = new AtomicLongArray(players);
+        posted = new AtomicLongArray(players);
+    }
+
+    public boolean isEnabled() {
+        return sampling > 0;
+    }
+
+    public LogHistogram histogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    /**
+     * Called when a key press is added to the player's queue.
+     *
+     * @param player      - the player id.
+     * @param eventMillis - the time the key event was created (System.currentTimeMillis).
+     */
+    void keyOffered(int player, long eventMillis) {
+        if (!isEnabled() || keys.getAndIncrement(player) % sampling != 0) return;
+        record(Stage.INPUT, TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - eventMillis)));
+        offered.compareAndSet(player, 0, System.nanoTime());
+    }
+
+    /**
+     * Called when a key press that has no key event (of a computer, external or remote player) is added to the
+     * player's queue. Its INPUT stage is not recorded.
+     *
+     * @param player - the player id.
+     */
+    void keyOffered(int player) {
+        if (!isEnabled() || keys.getAndIncrement(player) % sampling != 0) return;
+        offered.compareAndSet(player, 0, System.nanoTime());
+    }
+
+    /**
+     * Called by the player thread after taking key presses from its queue.
+     */
+    void keysTaken(int player) {
+        if (!isEnabled()) return;
+        long offeredAt = offered.getAndSet(player, 0);
+        long now = offeredAt == 0 ? 0 : System.nanoTime();
+        if (offeredAt != 0) record(Stage.QUEUE, now - offeredAt);
+        taken.set(player, now);
+    }
+
+    /**
+     * Called by the player thread after declaring a set.
+     */
+    void claimDeclared(int player) {
+        if (!isEnabled()) return;
+        long takenAt = taken.getAndSet(player, 0);
+        if (claims.getAndIncrement(player) % sampling != 0) {
+            declared.set(player, 0);
+            return;
+        }
+        long now = System.nanoTime();
+        if (takenAt != 0) record(Stage.DECLARE, now - takenAt);
+        dispatched.set(player, 0);
+        declared.set(player, now);
+    }
+
+    /**
+     * Called before testing the set a player declared (may be called again when the set is tested again).
+     *
+     * @return - the stamp to pass to claimVerified, 0 if the set is not traced.
+     */
+    long claimVerifying(int player) {
+        long declaredAt = isEnabled() ? declared.get(player) : 0;
+        if (declaredAt == 0) return 0;
+        long now = System.nanoTime();
+        if (dispatched.compareAndSet(player, 0, now)) record(Stage.DISPATCH, now - declaredAt);
+        return now;
+    }
+
+    void claimVerified(long verifyingAt) {
+        if (verifyingAt != 0) record(Stage.VERIFY, System.nanoTime() - verifyingAt);
+    }
+
+    /**
+     * Called by the dealer after posting a verdict to the player.
+     */
+    void verdictPosted(int player) {
+        if (isEnabled() && declared.get(player) != 0) posted.set(player, System.nanoTime());
+    }
+
+    /**
+     * Called by the player thread after updating the ui with a verdict.
+     */
+    void verdictShown(int player) {
+        if (!isEnabled()) return;
+        long declaredAt = declared.getAndSet(player, 0);
+        long postedAt = posted.getAndSet(player, 0);
+        if (declaredAt == 0) return;
+        long now = System.nanoTime();
+        if (postedAt != 0) record(Stage.VERDICT, now - postedAt);
+        record(Stage.CLAIM, now - declaredAt);
+    }
+
+    private void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+    /**
+     * Logs the percentiles of every stage that has samples.
+     *
+     * @param logger - the logger to write to.
+     */
+    public void report(Logger logger) {
+        if (!isEnabled()) return;
+        for (Stage stage : Stage.values()) {
+            LogHistogram histogram = histograms[stage.ordinal()];
+            if (histogram.count() == 0) continue;
+            StringBuilder line = new StringBuilder("latency ").append(stage.name().toLowerCase())
+                    .append(": samples=").append(histogram.count());
+            for (double percentile : PERCENTILES)
+                line.append(" p").append(percentile == (long) percentile ? String.valueOf((long) percentile) : String.valueOf(percentile))
+                        .append('=').append(micros(histogram.percentile(percentile)));
+            line.append(" max=").append(micros(histogram.max())).append(" (microseconds)");
+            logger.info(line.toString());
+        }
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,95 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative long values (e.g. latencies in nanoseconds) in log-linear buckets, like HdrHistogram:
+ * every power of two is split into SUB_BUCKETS buckets, so a value is reported with an error of at most 1/SUB_BUCKETS.
+ * Recording is lock free and does not allocate, any number of threads may record at once.
+ */
+public class LogHistogram {
+
+    /**
+     * The number of buckets in every power of two (a power of two itself).
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Values below SUB_BUCKETS get a bucket each, then SUB_BUCKETS buckets per power of two up to 2^62.
+     */
+    private static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     *
+     * @param value - the value to record.
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * @return - the number of values recorded.
+     */
+    public long count() {
+        return count.get();
+    }
+
+    /**
+     * @return - the largest value recorded (0 if none).
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile - between 0 and 100.
+     * @return           - the value that the given percentage of the recorded values does not exceed, rounded up to
+     *                     its bucket's upper bound (0 if nothing was recorded).
+     */
+    public long percentile(double percentile) {
+        long total = count.get();
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) return Math.min(upperBound(bucket), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * Forgets all the recorded values. Values recorded at the same time may be partly kept.
+     */
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++)
+            counts.set(bucket, 0);
+        count.set(0);
+        max.set(0);
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((long) (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+    }
+}
@@ -2,9 +2,10 @@ package bguspl.set.ex;
 
 import bguspl.set.Env;
 
-import java.util.concurrent.ArrayBlockingQueue;
-
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
 
 
 /**
@@ -35,19 +36,34 @@ public class Player implements Runnable {
     /**
      * The thread representing the current player.
      */
-    private Thread playerThread;
+    private volatile Thread playerThread;
 
 
     /**
      * The thread of the AI (computer) player (an additional thread used to generate key presses).
      */
-    private Thread aiThread;
+    private volatile Thread aiThread;
+
+    /**
+     * The main loop of the ai thread (null for human players).
+     */
+    private volatile AiDriver aiDriver;
 
     /**
      * True iff the player is human (not a computer player).
      */
     private final boolean human;
 
+    /**
+     * True iff the player is a computer player played by an out-of-process bot (see SharedMemoryBridge).
+     */
+    private final boolean external;
+
+    /**
+     * True iff the player is a human player played by a remote client (see RemotePlayerServer), not the keyboard.
+     */
+    private final boolean remote;
+
     /**
      * True iff game should be terminated.
      */
@@ -60,9 +76,19 @@ public class Player implements Runnable {
 
     /** 
      * we add it
-     * Queue for incoming actions of tableSize
+     * Queue for incoming actions of featureSize (key presses only, see postVerdict)
+     */
+    private final IntRingBuffer incomingActions;
+
+    /**
+     * the key presses taken from incomingActions at once
+     */
+    private final int[] actions;
+
+    /**
+     * the slots of the set being declared, reused by declareSet
      */
-    private BlockingQueue<Integer> incomingActions;
+    private final int[] declaredSlots;
 
     /**
      * an object containing a vector of the player's current chosen slots
@@ -81,11 +107,48 @@ public class Player implements Runnable {
      public static final int PENALTY_MSG = -1;
      public static final int POINT_MSG = -2;
      public static final int CONTINUEPLAY_MSG = -3;
+     static final int NO_VERDICT = 0;
 
      /**
       * true iff the player has declared a set and waiting for the dealer to give him an answer
       */
-     private boolean inCheckByDealer = false;;
+     private volatile boolean inCheckByDealer = false;
+
+     /**
+      * true iff the last declared set lost the race for its slots to another player's set, see declareSet.
+      * Only used by the player thread.
+      */
+     private boolean lostRace = false;
+
+     /**
+      * the dealer's verdict on the declared set (NO_VERDICT if there is none), see postVerdict
+      */
+     private final AtomicInteger verdicts = new AtomicInteger(NO_VERDICT);
+
+     /**
+      * true iff the player is frozen after a point or a penalty, see freeze
+      */
+     private volatile boolean frozen = false;
+
+     /**
+      * ends the player thread's wait for key presses
+      */
+     private final BooleanSupplier hasVerdictOrTerminate = () -> terminate || verdicts.get() != NO_VERDICT;
+
+     /**
+      * what offerKey does when incomingActions is full, see Config.keyOverflowPolicy
+      */
+     private final String keyOverflowPolicy;
+
+     /**
+      * the number of key presses offerKey dropped because incomingActions was full
+      */
+     private final AtomicLong droppedKeyPresses = new AtomicLong();
+
+     /**
+      * measures the latency of the player's key presses and sets, see Dealer.getTracer
+      */
+     private final LatencyTracer tracer;
 
      /**
       * for synchronize - waiting for aiThread to be created
@@ -113,11 +176,18 @@ public class Player implements Runnable {
         this.table = table;
         this.id = id;
         this.human = human;
-        this.incomingActions = new ArrayBlockingQueue<>(env.config.featureSize);
+        this.external = !human && id < env.config.humanPlayers + env.config.externalPlayers;
+        this.remote = human && id >= env.config.humanPlayers - env.config.remotePlayers;
+        this.incomingActions = new IntRingBuffer(env.config.featureSize);
+        this.actions = new int[env.config.featureSize];
+        this.declaredSlots = new int[env.config.featureSize];
         this.chosenSlots = new ChosenSlots(table, env);
         this.featureSize = env.config.featureSize;
         this.tableSize = env.config.tableSize;
         this.aiStarted = human;
+        this.keyOverflowPolicy = env.config.keyOverflowPolicy;
+        LatencyTracer tracer = dealer.getTracer();
+        this.tracer = tracer != null ? tracer : LatencyTracer.NONE;
     }
 
     /**
@@ -128,7 +198,7 @@ public class Player implements Runnable {
         playerThread = Thread.currentThread();
         env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
         if (!human) {
-            createArtificialIntelligence();
+            if (!external) createArtificialIntelligence(); //external players get their keys from the bridge
             aiStarted = true;
             synchronized(waitForAi){
                 waitForAi.notifyAll();
@@ -136,43 +206,90 @@ public class Player implements Runnable {
         }
 
         while (!terminate) {
-            try{
-                Integer action=incomingActions.take(); //wait until the queue isn't empty
-                if (action == PENALTY_MSG) {
-                    penalty();
-                    incomingActions.clear();
-                    inCheckByDealer = false;
-                } 
-                else if (action == POINT_MSG) {
-                    point();
-                    incomingActions.clear();
-                    inCheckByDealer = false;
-                } else if (action == CONTINUEPLAY_MSG) {
-                    inCheckByDealer = false;
-                }
-                else if (!inCheckByDealer) {
-                    if (chosenSlots.contains(action)){ //we need to remove token
-                        table.removeToken(id, action);
-                        chosenSlots.remove(action); 
-                    }
-                    else{  //we need to place token
-                        if(chosenSlots.size() != featureSize){
-                            if(table.placeToken(id, action)){
-                                chosenSlots.add(action); 
-                                if (chosenSlots.size() == featureSize){
-                                    inCheckByDealer = true;
-                                    incomingActions.clear();   
-                                    dealer.addPlayerToCheck(this); 
-                                }
-                            }
-                        }
+            int verdict = verdicts.getAndSet(NO_VERDICT);
+            if (verdict != NO_VERDICT) {
+                handleVerdict(verdict);
+                continue;
+            }
+            int count = incomingActions.drainTo(actions);
+            if (count == 0) {
+                incomingActions.awaitNotEmpty(hasVerdictOrTerminate); //wait until a key is pressed, a verdict is posted or the game terminates
+                continue;
+            }
+            tracer.keysTaken(id);
+            for (int i = 0; i < count; i++) {
+                handleKey(actions[i]);
+            }
+        }
+        Thread.interrupted(); //the dealer interrupts the player thread on termination, clear it before joining
+        if (aiThread != null) try { aiThread.join(); } catch (InterruptedException ignored) {}
+        env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");    
+    }
+
+    /**
+     * Places or removes a token according to a key press.
+     *
+     * @param action - the slot of the key pressed.
+     */
+    private void handleKey(int action) {
+        if (inCheckByDealer || frozen) { //input is discarded while frozen
+            return;
+        }
+        if (chosenSlots.contains(action)){ //we need to remove token
+            lostRace = false;
+            table.removeToken(id, action);
+            chosenSlots.remove(action); 
+        }
+        else{  //we need to place token
+            if(chosenSlots.size() != featureSize){
+                if(table.placeToken(id, action)){
+                    lostRace = false;
+                    chosenSlots.add(action); 
+                    if (chosenSlots.size() == featureSize){
+                        declareSet();
                     }
                 }
             }
-            catch (InterruptedException ignored){}
+            else if(lostRace){ //our last declared set lost the race for its slots, try again
+                declareSet();
+            }
         }
-        if (!human) try { aiThread.join(); } catch (InterruptedException ignored) {}
-        env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");    
+    }
+
+    /**
+     * Declares the set of chosen slots. The slots are reserved on the table first; if another player's declared set
+     * already holds one of them the declaration is dropped right here, the tokens stay and the player may try again by
+     * pressing any other key. Only sets that won their slots are sent to the dealer.
+     */
+    private void declareSet() {
+        int count = chosenSlots.getSlots(declaredSlots);
+        lostRace = !table.reserveSlots(id, declaredSlots, count);
+        if (lostRace) {
+            return;
+        }
+        inCheckByDealer = true;
+        incomingActions.clear();
+        tracer.claimDeclared(id);
+        dealer.addPlayerToCheck(this);
+    }
+
+    /**
+     * Acts on a verdict the dealer posted for the set this player declared.
+     *
+     * @param verdict - one of POINT_MSG, PENALTY_MSG or CONTINUEPLAY_MSG.
+     */
+    private void handleVerdict(int verdict) {
+        lostRace = false; //a set that was checked is not declared again without a change of tokens
+        if (verdict == PENALTY_MSG) {
+            penalty();
+            incomingActions.clear();
+        } else if (verdict == POINT_MSG) {
+            point();
+            incomingActions.clear();
+        }
+        inCheckByDealer = false;
+        tracer.verdictShown(id);
+        wakeAi();
     }
 
     /**
@@ -180,15 +297,37 @@ public class Player implements Runnable {
      * key presses. If the queue of key presses is full, the thread waits until it is not full.
      */
     private void createArtificialIntelligence() {
-        // note: this is a very, very smart AI (!)
-        aiThread = new Thread(() -> {
-            env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
-            while (!terminate) {
-                keyPressed((int) (Math.random() * tableSize));
-            }
-            env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
-        }, "computer-" + id);
-        aiThread.start();
+        // note: this is a very, very smart AI (!) - see Config.computerStrategy
+        aiDriver = new AiDriver(env, this, table, ComputerStrategy.create(env, dealer.getSetEngine()));
+        aiThread = GameThreads.start(env, aiDriver, "computer-" + id);
+    }
+
+    /**
+     * @return - true iff key presses of this player would be handled right now.
+     */
+    boolean canAct() {
+        return !terminate && !inCheckByDealer && !frozen && !dealer.dealerIsReshuffling;
+    }
+
+    boolean isTerminated() {
+        return terminate;
+    }
+
+    /**
+     * @return - true iff the player's keys come from a remote client, not the keyboard.
+     */
+    public boolean isRemote() {
+        return remote;
+    }
+
+    /**
+     * Wakes up the ai thread (if any) after an event that may let the player act again.
+     */
+    void wakeAi() {
+        AiDriver driver = aiDriver;
+        if (driver != null) {
+            driver.wake();
+        }
     }
 
     /**
@@ -196,6 +335,8 @@ public class Player implements Runnable {
      */
     public void terminate() {
         terminate = true;
+        LockSupport.unpark(playerThread);
+        wakeAi();
     }
 
     /**
@@ -204,12 +345,90 @@ public class Player implements Runnable {
      * @param slot - the slot corresponding to the key pressed.
      */
     public void keyPressed(int slot) { 
-        if ((inCheckByDealer && slot >= 0) || dealer.dealerIsReshuffling) {return;}
+        if (inCheckByDealer || dealer.dealerIsReshuffling) {return;}
+        tracer.keyOffered(id);
         try { 
             incomingActions.put(slot);//when the queue is full the thread will wait
         } catch(InterruptedException ignored){}
     }
 
+    /**
+     * This method is called by the ui thread when a key is pressed (or by the bridge thread for external players, or
+     * the server thread for remote players).
+     * Unlike keyPressed it never waits: when the queue is full a press is dropped according to
+     * Config.keyOverflowPolicy and counted (see getDroppedKeyPresses).
+     * Keys of the other computer players are ignored, their ai thread is the only one adding to their queue.
+     *
+     * @param slot        - the slot corresponding to the key pressed.
+     * @param eventMillis - the time the key event was created (System.currentTimeMillis), for latency tracing.
+     */
+    public void offerKey(int slot, long eventMillis) {
+        if (!acceptsOfferedKeys()) {return;}
+        tracer.keyOffered(id, eventMillis);
+        enqueueKey(slot);
+    }
+
+    /**
+     * Like offerKey(int, long), for key presses that do not come from a key event of this process.
+     *
+     * @param slot - the slot corresponding to the key pressed.
+     */
+    public void offerKey(int slot) {
+        if (!acceptsOfferedKeys()) {return;}
+        tracer.keyOffered(id);
+        enqueueKey(slot);
+    }
+
+    private boolean acceptsOfferedKeys() {
+        return (human || external) && !inCheckByDealer && !dealer.dealerIsReshuffling;
+    }
+
+    private void enqueueKey(int slot) {
+        if (incomingActions.offer(slot)) {return;}
+        switch (keyOverflowPolicy) {
+            case "drop-newest":
+                droppedKeyPresses.incrementAndGet();
+                break;
+            case "coalesce":
+                if (incomingActions.contains(slot)) {
+                    droppedKeyPresses.incrementAndGet();
+                } else {
+                    dropOldestKey(slot);
+                }
+                break;
+            default:
+                dropOldestKey(slot);
+        }
+    }
+
+    /**
+     * Adds a key press to the full queue in place of the oldest one, counting the dropped press.
+     */
+    private void dropOldestKey(int slot) {
+        if (incomingActions.offerDropOldest(slot)) {
+            droppedKeyPresses.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return - the number of key presses dropped because the player's queue was full.
+     */
+    public long getDroppedKeyPresses() {
+        return droppedKeyPresses.get();
+    }
+
+    /**
+     * Called by the dealer to report the verdict on the set this player declared.
+     * Never blocks: the verdict is left in a single-slot mailbox (a player has at most one set in check at a time)
+     * and the player thread is woken up to handle it, so it never competes with the queued key presses.
+     *
+     * @param verdict - one of POINT_MSG, PENALTY_MSG or CONTINUEPLAY_MSG.
+     */
+    public void postVerdict(int verdict) {
+        verdicts.set(verdict);
+        LockSupport.unpark(playerThread);
+    }
+
     /**
      * Award a point to a player and perform other related actions.
      *
@@ -217,34 +436,42 @@ public class Player implements Runnable {
      * @post - the player's score is updated in the ui.
      */
     public void point() {
-         int ignored = table.countCards(); // this part is just for demonstration in the unit tests
-         long freezeUntil=System.currentTimeMillis()+env.config.pointFreezeMillis; //the player is blocked for input, see keyPresses method
-         env.ui.setFreeze(id, env.config.pointFreezeMillis);
-         int cnt = 0;
-         while (System.currentTimeMillis() <= freezeUntil && !terminate) {
-             cnt ++;
-             try {
-                 Thread.sleep(ONE_SECOND);
-             } catch (Exception e) {}
-             env.ui.setFreeze(id, env.config.pointFreezeMillis - ONE_SECOND * cnt);            
-         }
+        int ignored = table.countCards(); // this part is just for demonstration in the unit tests
         env.ui.setScore(id, ++score);
+        freeze(env.config.pointFreezeMillis);
     }        
 
     /**
      * Penalize a player and perform other related actions.
      */
     public void penalty() {
-        long freezeUntil=System.currentTimeMillis()+env.config.penaltyFreezeMillis; //the player is blocked for input, see keyPresses method
-        env.ui.setFreeze(id, env.config.penaltyFreezeMillis);
-        int cnt = 0;
-        while (System.currentTimeMillis() <= freezeUntil && !terminate) {
-            cnt ++;
-            try {
-                Thread.sleep(ONE_SECOND);
-            } catch (Exception e) {}
-            env.ui.setFreeze(id, env.config.penaltyFreezeMillis - ONE_SECOND * cnt);            
+        freeze(env.config.penaltyFreezeMillis);
+    }
+
+    /**
+     * Freezes the player: until the freeze expires the player thread discards the incoming key presses.
+     * The expiry and the display updates (one per whole second left) are scheduled on the shared timer wheel, so the
+     * player thread does not sleep through the freeze.
+     *
+     * @param millis - the freeze time in milliseconds.
+     */
+    private void freeze(long millis) {
+        if (millis <= 0) {
+            return;
         }
+        frozen = true;
+        env.ui.setFreeze(id, millis);
+        TimerWheel wheel = TimerWheel.shared(env.logger);
+        for (long left = (millis - 1) / ONE_SECOND * ONE_SECOND; left > 0; left -= ONE_SECOND) {
+            long shown = left;
+            wheel.schedule(millis - left, () -> env.ui.setFreeze(id, shown));
+        }
+        wheel.schedule(millis, () -> {
+            frozen = false;
+            env.ui.setFreeze(id, 0);
+            LockSupport.unpark(playerThread);
+            wakeAi();
+        });
     }
 
     public int score() {
@@ -259,6 +486,10 @@ public class Player implements Runnable {
         return this.playerThread;
     }
 
+    public Thread getAiThread() {
+        return this.aiThread;
+    }
+
     public ChosenSlots getChosenSlots(){
         return chosenSlots;
     }
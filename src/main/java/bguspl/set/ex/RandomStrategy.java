@@ -0,0 +1,28 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Presses random slots, one at a time, without waiting.
+ */
+class RandomStrategy implements ComputerStrategy {
+
+    private final int tableSize;
+
+    RandomStrategy(Env env) {
+        this.tableSize = env.config.tableSize;
+    }
+
+    @Override
+    public int decide(int[] slotToCard, ChosenSlots chosen, int[] presses, long budgetNanos) {
+        presses[0] = ThreadLocalRandom.current().nextInt(tableSize);
+        return 1;
+    }
+
+    @Override
+    public long reactionNanos() {
+        return 0;
+    }
+}
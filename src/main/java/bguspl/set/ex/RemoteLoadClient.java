@@ -0,0 +1,158 @@
+package bguspl.set.ex;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulates remote players to measure RemotePlayerServer: opens the given number of connections from a single
+ * thread, presses random slots at the given rate on each one and counts the updates the server sends back.
+ * Prints the rates every second and, at the end, the totals per second. The server logs the cpu time of its selector
+ * thread when the game ends, and the presses and messages per cpu second.
+ *
+ * Usage: java -cp target/classes bguspl.set.ex.RemoteLoadClient [host] [port] [clients] [presses per second per
+ * client] [seconds]
+ */
+public class RemoteLoadClient {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final class Client {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+        final ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+        int tableSize = -1;
+        boolean over;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final Selector selector;
+    private final List<Client> clients = new ArrayList<>();
+    private long presses;
+    private long messages;
+    private long bytesRead;
+
+    private RemoteLoadClient() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7777;
+        int count = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        double rate = args.length > 3 ? Double.parseDouble(args[3]) : 10;
+        long seconds = args.length > 4 ? Long.parseLong(args[4]) : 10;
+        new RemoteLoadClient().run(new InetSocketAddress(host, port), count, rate, seconds);
+    }
+
+    private void run(InetSocketAddress address, int count, double rate, long seconds) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            SocketChannel channel = SocketChannel.open(address);
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Client client = new Client(channel);
+            client.out.put(RemoteProtocol.HELLO);
+            channel.register(selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE, client);
+            clients.add(client);
+        }
+        System.out.printf("connected %d clients in %d ms%n", count, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        long nextReport = start + TimeUnit.SECONDS.toNanos(1);
+        long reportedPresses = 0, reportedMessages = 0;
+        double pressIntervalNanos = 1e9 / rate;
+        long pressesDue = 0;
+        while (System.nanoTime() < end && !allOver()) {
+            selector.select(1);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Client client = (Client) key.attachment();
+                if (key.isValid() && key.isReadable()) read(key, client);
+                if (key.isValid() && key.isWritable()) write(key, client);
+            }
+
+            // spread the presses due by now over the clients that were welcomed
+            long due = (long) ((System.nanoTime() - start) / pressIntervalNanos);
+            for (; pressesDue < due; pressesDue++) {
+                for (Client client : clients) {
+                    if (client.tableSize <= 0 || client.over || client.out.remaining() < RemoteProtocol.PRESS_SIZE) continue;
+                    client.out.put(RemoteProtocol.PRESS).putShort((short) ThreadLocalRandom.current().nextInt(client.tableSize));
+                    presses++;
+                    SelectionKey key = client.channel.keyFor(selector);
+                    if (key != null && key.isValid()) key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            }
+
+            long now = System.nanoTime();
+            if (now >= nextReport) {
+                System.out.printf("%d presses/s, %d messages/s%n", presses - reportedPresses, messages - reportedMessages);
+                reportedPresses = presses;
+                reportedMessages = messages;
+                nextReport += TimeUnit.SECONDS.toNanos(1);
+            }
+        }
+
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d clients, %.1f seconds: %d presses (%.0f/s), %d messages (%.0f/s), %d bytes read%n",
+                count, elapsed, presses, presses / elapsed, messages, messages / elapsed, bytesRead);
+        for (Client client : clients)
+            client.channel.close();
+        selector.close();
+    }
+
+    private boolean allOver() {
+        for (Client client : clients)
+            if (!client.over) return false;
+        return true;
+    }
+
+    private void read(SelectionKey key, Client client) throws IOException {
+        int read = client.channel.read(client.in);
+        if (read < 0) {
+            client.over = true;
+            key.cancel();
+            return;
+        }
+        bytesRead += read;
+        ByteBuffer in = client.in;
+        in.flip();
+        while (in.hasRemaining()) {
+            byte type = in.get(in.position());
+            int size;
+            if (type == RemoteProtocol.WINNERS) {
+                if (in.remaining() < 3) break;
+                size = 3 + 2 * in.getShort(in.position() + 1);
+            } else {
+                size = RemoteProtocol.serverMessageSize(type);
+            }
+            if (size < 0) throw new IOException("unknown message " + type);
+            if (in.remaining() < size) break;
+            if (type == RemoteProtocol.WELCOME) client.tableSize = in.getShort(in.position() + 3);
+            if (type == RemoteProtocol.GAME_OVER) client.over = true;
+            in.position(in.position() + size);
+            messages++;
+        }
+        in.compact();
+    }
+
+    private void write(SelectionKey key, Client client) throws IOException {
+        client.out.flip();
+        client.channel.write(client.out);
+        client.out.compact();
+        if (client.out.position() == 0) key.interestOps(SelectionKey.OP_READ);
+    }
+}
@@ -0,0 +1,612 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.ThreadLogger;
+import bguspl.set.UserInterface;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Lets remote clients play the last Config.remotePlayers human players over tcp (see RemoteProtocol).
+ * A single selector thread accepts the connections, reads their key presses and hands them to the players, and
+ * pushes the game updates to all the clients. The updates arrive as user interface calls from any thread; they are
+ * appended to a shared buffer and sent at most once per Config.serverTickMillis, as one frame written to every
+ * client with a gathering write (a slow client's unsent frames queue up, up to MAX_BACKLOG). The buffer of a frame
+ * becomes the shared buffer again once every client wrote it, so a steady game allocates no buffers.
+ */
+public class RemotePlayerServer implements UserInterface, Runnable {
+
+    /**
+     * A client whose unsent frames reach this number is disconnected.
+     */
+    private static final int MAX_BACKLOG = 1024;
+
+    /**
+     * The maximal number of buffers in a single gathering write.
+     */
+    private static final int MAX_GATHER = 64;
+
+    private static final int READ_BUFFER_SIZE = 1024;
+    private static final int FRAME_SIZE = 4096;
+
+    /**
+     * The maximal number of frame buffers kept for reuse.
+     */
+    private static final int MAX_FREE_FRAMES = 16;
+
+    private final Logger logger;
+    private final Config config;
+    private final Player[] players;
+
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Thread thread;
+    private final AtomicBoolean disposed = new AtomicBoolean();
+    private volatile boolean stopping;
+
+    /**
+     * The remote players that have no client (selector thread only).
+     */
+    private final ArrayDeque<Integer> freePlayers = new ArrayDeque<>();
+
+    /**
+     * The number of clients that play a player (updates are not buffered while there are none).
+     */
+    private volatile int clients;
+
+    /**
+     * Guards the updates not sent yet and the copy of the game state sent to new clients.
+     */
+    private final Object lock = new Object();
+    private ByteBuffer pending = ByteBuffer.allocate(FRAME_SIZE);
+    private boolean countdownPending;
+    private long countdownMillis;
+    private boolean countdownWarn;
+    private long countdownDeadline = -1; // the countdown runs to this deadline, or from this start if elapsed
+    private long countdownWarnMillis;
+    private boolean countdownElapsed;
+    private long countdownShown = -1;
+    private boolean wakeupRequested;
+    private final int[] cards;
+    private final int[] scores;
+    private final long[] frozenUntil; // System.currentTimeMillis, 0 if not frozen
+
+    /**
+     * Statistics, logged when the server stops (selector thread only, except messages which is guarded by lock).
+     */
+    private long accepted;
+    private long presses;
+    private long frames;
+    private long messages;
+    private long bytesWritten;
+    private long startNanos;
+
+    /**
+     * The buffers of a single gathering write (selector thread only).
+     */
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+
+    /**
+     * Frames that every client wrote, to be reused (selector thread only).
+     */
+    private final ArrayDeque<Frame> freeFrames = new ArrayDeque<>();
+
+    /**
+     * A buffer sent to clients, with the number of clients that did not write it yet.
+     */
+    private static final class Frame {
+        ByteBuffer data;
+        int users;
+
+        Frame(ByteBuffer data) {
+            this.data = data;
+        }
+    }
+
+    private static final class Connection {
+        final SocketChannel channel;
+        final ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        final ArrayDeque<ByteBuffer> out = new ArrayDeque<>(); // the unsent part of each frame of outFrames
+        final ArrayDeque<Frame> outFrames = new ArrayDeque<>();
+        int player = -1;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Opens the server socket. The players may be created later, but before start is called.
+     *
+     * @throws IOException - if the server socket cannot be opened.
+     */
+    public RemotePlayerServer(Logger logger, Config config, Player[] players) throws IOException {
+        this.logger = logger;
+        this.config = config;
+        this.players = players;
+        this.cards = new int[config.tableSize];
+        Arrays.fill(cards, Table.NO_CARD);
+        this.scores = new int[config.players];
+        this.frozenUntil = new long[config.players];
+        for (int player = config.humanPlayers - config.remotePlayers; player < config.humanPlayers; player++)
+            freePlayers.add(player);
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        this.thread = new Thread(this, "remote-server");
+    }
+
+    /**
+     * Binds the server socket and starts the selector thread.
+     *
+     * @throws IOException - if the server socket cannot be bound.
+     */
+    public void start() throws IOException {
+        server.bind(new InetSocketAddress(config.serverHost, config.serverPort));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        logger.info("serving remote players " + freePlayers + " on " + server.getLocalAddress());
+        ThreadLogger.logStart(logger, thread.getName());
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        startNanos = System.nanoTime();
+        long tickNanos = TimeUnit.MILLISECONDS.toNanos(config.serverTickMillis);
+        long nextFlush = startNanos;
+        try {
+            while (!stopping) {
+                long timeoutMillis = 0; // no timeout
+                synchronized (lock) {
+                    long untilFlush = Math.max(1, ceilMillis(nextFlush - System.nanoTime()));
+                    boolean hasPending = pending.position() > 0 || countdownPending;
+                    if (hasPending) timeoutMillis = untilFlush;
+                    else if (countdownDeadline >= 0 && clients > 0) // sleep until the shown value changes
+                        timeoutMillis = Math.max(untilFlush, untilCountdownChange());
+                    wakeupRequested = hasPending; // while nothing is pending, the next update wakes the selector up
+                }
+                selector.select(timeoutMillis);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+                long now = System.nanoTime();
+                if (now - nextFlush >= 0 && flush()) nextFlush = now + tickNanos;
+            }
+            flush();
+        } catch (IOException e) {
+            logger.severe("remote server failed: " + e);
+        } finally {
+            close();
+            logStatistics();
+            ThreadLogger.logStop(logger, thread.getName());
+        }
+    }
+
+    private void handle(SelectionKey key) throws IOException {
+        if (!key.isValid()) return;
+        if (key.isAcceptable()) {
+            SocketChannel channel = server.accept();
+            if (channel == null) return;
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+            accepted++;
+            return;
+        }
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isReadable()) read(key, connection);
+            if (key.isValid() && key.isWritable()) write(key, connection);
+        } catch (IOException e) {
+            disconnect(key, connection);
+        }
+    }
+
+    private void read(SelectionKey key, Connection connection) throws IOException {
+        ByteBuffer in = connection.in;
+        if (connection.channel.read(in) < 0) {
+            disconnect(key, connection);
+            return;
+        }
+        in.flip();
+        while (in.hasRemaining()) {
+            byte type = in.get(in.position());
+            if (type == RemoteProtocol.HELLO) {
+                in.get();
+                hello(key, connection);
+            } else if (type == RemoteProtocol.PRESS) {
+                if (in.remaining() < RemoteProtocol.PRESS_SIZE) break;
+                in.get();
+                press(connection, in.getShort());
+            } else {
+                logger.warning("remote client sent an unknown message " + type + ", disconnecting.");
+                disconnect(key, connection);
+                return;
+            }
+            if (!key.isValid()) return;
+        }
+        in.compact();
+    }
+
+    private void hello(SelectionKey key, Connection connection) throws IOException {
+        if (connection.player >= 0) return;
+        Integer player = freePlayers.poll();
+        if (player == null) {
+            logger.warning("no remote player is free for " + connection.channel.getRemoteAddress() + ", disconnecting.");
+            disconnect(key, connection);
+            return;
+        }
+        connection.player = player;
+        clients++;
+        Frame welcome = newFrame(7 + cards.length * 5 + scores.length * 14);
+        ByteBuffer data = welcome.data;
+        synchronized (lock) { // the state may change right after, the changes are in the next frame
+            data.put(RemoteProtocol.WELCOME).putShort((short) (int) player)
+                    .putShort((short) cards.length).putShort((short) scores.length);
+            for (int slot = 0; slot < cards.length; slot++)
+                if (cards[slot] != Table.NO_CARD)
+                    data.put(RemoteProtocol.CARD).putShort((short) slot).putShort((short) cards[slot]);
+            for (int id = 0; id < scores.length; id++)
+                data.put(RemoteProtocol.SCORE).putShort((short) id).putInt(scores[id]);
+            long now = System.currentTimeMillis();
+            for (int id = 0; id < frozenUntil.length; id++)
+                if (frozenUntil[id] > now)
+                    data.put(RemoteProtocol.FREEZE).putShort((short) id).putInt((int) (frozenUntil[id] - now));
+            countdownShown = -1; // the running countdown is sent again in the next frame
+        }
+        data.flip();
+        send(connection, welcome);
+        write(key, connection);
+    }
+
+    /**
+     * @param size - the minimal capacity of the frame.
+     * @return     - a cleared frame, reused if possible.
+     */
+    private Frame newFrame(int size) {
+        Frame frame = freeFrames.poll();
+        if (frame == null) frame = new Frame(ByteBuffer.allocate(Math.max(FRAME_SIZE, size)));
+        else if (frame.data.capacity() < size) frame.data = ByteBuffer.allocate(size);
+        frame.data.clear();
+        return frame;
+    }
+
+    private void send(Connection connection, Frame frame) {
+        frame.users++;
+        connection.out.add(frame.data.duplicate());
+        connection.outFrames.add(frame);
+    }
+
+    /**
+     * Called when a client wrote a frame (or will not write it): the last one returns it for reuse.
+     */
+    private void release(Frame frame) {
+        if (--frame.users == 0 && freeFrames.size() < MAX_FREE_FRAMES) freeFrames.add(frame);
+    }
+
+    private void press(Connection connection, int slot) {
+        if (connection.player < 0 || slot < 0 || slot >= config.tableSize) return;
+        presses++;
+        players[connection.player].offerKey(slot);
+    }
+
+    private void write(SelectionKey key, Connection connection) throws IOException {
+        if (connection.out.size() > MAX_BACKLOG) {
+            logger.warning("remote player " + connection.player + " is too slow, disconnecting.");
+            disconnect(key, connection);
+            return;
+        }
+        int count = 0;
+        for (ByteBuffer buffer : connection.out) {
+            if (count == MAX_GATHER) break;
+            gather[count++] = buffer;
+        }
+        bytesWritten += connection.channel.write(gather, 0, count);
+        Arrays.fill(gather, 0, count, null);
+        while (!connection.out.isEmpty() && !connection.out.peek().hasRemaining()) {
+            connection.out.poll();
+            release(connection.outFrames.poll());
+        }
+        key.interestOps(connection.out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Sends the updates since the last frame to all the clients.
+     *
+     * @return - true iff there were any.
+     */
+    private boolean flush() {
+        Frame frame = newFrame(0);
+        synchronized (lock) {
+            if (countdownDeadline >= 0) runCountdown();
+            if (countdownPending) {
+                ensure(6);
+                pending.put(RemoteProtocol.COUNTDOWN).putInt((int) countdownMillis).put((byte) (countdownWarn ? 1 : 0));
+                countdownPending = false;
+                messages++;
+            }
+            if (pending.position() == 0) {
+                freeFrames.push(frame);
+                return false;
+            }
+            ByteBuffer sent = pending; // the frame's buffer becomes the pending one, no copy
+            pending = frame.data;
+            frame.data = sent;
+            sent.flip();
+        }
+        frames++;
+        frame.users++; // held while it is handed out, so a client writing it at once does not free it
+        for (SelectionKey key : selector.keys()) {
+            Connection connection = (Connection) key.attachment();
+            if (connection == null || connection.player < 0 || !key.isValid()) continue;
+            send(connection, frame);
+            try {
+                write(key, connection);
+            } catch (IOException e) {
+                disconnect(key, connection);
+            }
+        }
+        release(frame);
+        return true;
+    }
+
+    private void disconnect(SelectionKey key, Connection connection) {
+        if (connection.player >= 0) {
+            freePlayers.add(connection.player);
+            clients--;
+            connection.player = -1;
+        }
+        connection.out.clear();
+        for (Frame frame = connection.outFrames.poll(); frame != null; frame = connection.outFrames.poll())
+            release(frame);
+        key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException ignored) {}
+    }
+
+    private void close() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() != null) disconnect(key, (Connection) key.attachment());
+        }
+        try {
+            server.close();
+            selector.close();
+        } catch (IOException ignored) {}
+    }
+
+    private void logStatistics() {
+        double seconds = Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+        logger.info(String.format("remote server: %d connections, %d presses (%.0f/s), %d frames, %d messages, %d bytes (%.0f/s) in %.1f seconds",
+                accepted, presses, presses / seconds, frames, messages, bytesWritten, bytesWritten / seconds, seconds));
+        // the actions per second of the core running the selector thread (called on it, before it stops)
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!threads.isCurrentThreadCpuTimeSupported()) return;
+        double cpuSeconds = Math.max(1e-9, threads.getCurrentThreadCpuTime() / 1e9);
+        logger.info(String.format("remote server: %.2f cpu seconds (%.0f%% of a core), %.0f presses and %.0f messages per cpu second",
+                cpuSeconds, 100 * cpuSeconds / seconds, presses / cpuSeconds, messages / cpuSeconds));
+    }
+
+    /**
+     * Makes room for an update in the pending buffer. Called while holding lock.
+     */
+    private void ensure(int size) {
+        if (pending.remaining() >= size) return;
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + size));
+        pending.flip();
+        larger.put(pending);
+        pending = larger;
+    }
+
+    /**
+     * Wakes the selector up for the first update after an idle period. Called while holding lock.
+     */
+    private void updated() {
+        messages++;
+        if (!wakeupRequested) {
+            wakeupRequested = true;
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        synchronized (lock) {
+            cards[slot] = card;
+            if (clients == 0) return;
+            ensure(5);
+            pending.put(RemoteProtocol.CARD).putShort((short) slot).putShort((short) card);
+            updated();
+        }
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        placeCard(Table.NO_CARD, slot);
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        token(player, slot, true);
+    }
+
+    @Override
+    public void removeTokens() {
+        removeTokens(-1);
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        synchronized (lock) {
+            if (clients == 0) return;
+            ensure(3);
+            pending.put(RemoteProtocol.TOKENS_CLEARED).putShort((short) slot);
+            updated();
+        }
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        token(player, slot, false);
+    }
+
+    private void token(int player, int slot, boolean placed) {
+        synchronized (lock) {
+            if (clients == 0) return;
+            ensure(6);
+            pending.put(RemoteProtocol.TOKEN).putShort((short) player).putShort((short) slot).put((byte) (placed ? 1 : 0));
+            updated();
+        }
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        synchronized (lock) { // only the last countdown of every frame is sent
+            countdownDeadline = -1;
+            if (clients == 0) return;
+            countdownMillis = millies;
+            countdownWarn = warn;
+            countdownPending = true;
+            if (!wakeupRequested) {
+                wakeupRequested = true;
+                selector.wakeup();
+            }
+        }
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        setCountdown(millies, false);
+    }
+
+    @Override
+    public void setCountdownDeadline(long deadline, long warnMillis) {
+        setRunningCountdown(deadline, warnMillis, false);
+    }
+
+    @Override
+    public void setElapsedSince(long start) {
+        setRunningCountdown(start, 0, true);
+    }
+
+    private void setRunningCountdown(long time, long warnMillis, boolean elapsed) {
+        synchronized (lock) { // the selector thread sends the countdown whenever the shown value changes
+            countdownDeadline = time;
+            countdownWarnMillis = warnMillis;
+            countdownElapsed = elapsed;
+            countdownShown = -1;
+            if (clients > 0 && !wakeupRequested) {
+                wakeupRequested = true;
+                selector.wakeup();
+            }
+        }
+    }
+
+    private static long ceilMillis(long nanos) {
+        return (nanos + 999_999) / 1_000_000;
+    }
+
+    /**
+     * @return - the milliseconds until the running countdown shows another value: the next second, the start of the
+     *           warning, or the next tick while warning. Called while holding the lock.
+     */
+    private long untilCountdownChange() {
+        long now = System.currentTimeMillis();
+        if (countdownElapsed) return 1000 - (now - countdownDeadline) % 1000;
+        long millies = Math.max(0, countdownDeadline - now);
+        if (millies < countdownWarnMillis) return 1;
+        return Math.min(millies % 1000 + 1, millies - countdownWarnMillis + 1);
+    }
+
+    /**
+     * Queues the running countdown if the value the clients show changed: every second, or every tick while warning.
+     * Called while holding the lock.
+     */
+    private void runCountdown() {
+        long now = System.currentTimeMillis();
+        long millies = countdownElapsed ? now - countdownDeadline : Math.max(0, countdownDeadline - now);
+        boolean warn = !countdownElapsed && millies < countdownWarnMillis;
+        long shown = warn ? -2 - millies : millies / 1000;
+        if (shown == countdownShown) return;
+        countdownShown = shown;
+        countdownMillis = millies;
+        countdownWarn = warn;
+        countdownPending = true;
+        if (!countdownElapsed && millies == 0) countdownDeadline = -1; // the countdown is over
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        synchronized (lock) {
+            frozenUntil[player] = millies > 0 ? System.currentTimeMillis() + millies : 0;
+            if (clients == 0) return;
+            ensure(7);
+            pending.put(RemoteProtocol.FREEZE).putShort((short) player).putInt((int) millies);
+            updated();
+        }
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        synchronized (lock) {
+            scores[player] = score;
+            if (clients == 0) return;
+            ensure(7);
+            pending.put(RemoteProtocol.SCORE).putShort((short) player).putInt(score);
+            updated();
+        }
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        synchronized (lock) {
+            if (clients == 0) return;
+            ensure(3 + 2 * players.length);
+            pending.put(RemoteProtocol.WINNERS).putShort((short) players.length);
+            for (int player : players)
+                pending.putShort((short) player);
+            updated();
+        }
+    }
+
+    /**
+     * Sends GAME_OVER to the clients, then disconnects them and stops the selector thread.
+     */
+    @Override
+    public void dispose() {
+        if (!disposed.compareAndSet(false, true)) return;
+        synchronized (lock) {
+            ensure(1);
+            pending.put(RemoteProtocol.GAME_OVER);
+            messages++;
+        }
+        stopping = true;
+        selector.wakeup();
+        if (thread.isAlive()) {
+            try {
+                thread.join(config.shutdownTimeoutMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            close();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package bguspl.set.ex;
+
+/**
+ * The binary protocol between RemotePlayerServer and its clients. Every message is a type byte followed by fixed
+ * size big-endian fields (only WINNERS has a count of ids).
+ *
+ * Client to server:
+ * - HELLO: asks to play one of the remote players.
+ * - PRESS (short slot): a key press of the client's player.
+ *
+ * Server to client:
+ * - WELCOME (short player, short table size, short players): the player assigned to the client, then the cards on
+ *   the table, the scores and the time left of the players that are frozen follow as CARD, SCORE and FREEZE messages.
+ * - CARD (short slot, short card): a card was placed, or removed if the card is -1.
+ * - TOKEN (short player, short slot, byte placed): a token was placed (1) or removed (0).
+ * - TOKENS_CLEARED (short slot): all the tokens were removed from the slot, or from the whole table if it is -1.
+ * - SCORE (short player, int score).
+ * - FREEZE (short player, int millis).
+ * - COUNTDOWN (int millis, byte warn): the countdown (or the elapsed time if there is no countdown).
+ * - WINNERS (short count, short player * count).
+ * - GAME_OVER: the server closes the connection after it.
+ */
+final class RemoteProtocol {
+
+    private RemoteProtocol() {}
+
+    static final byte HELLO = 1;
+    static final byte PRESS = 2;
+
+    static final byte WELCOME = 1;
+    static final byte CARD = 2;
+    static final byte TOKEN = 3;
+    static final byte TOKENS_CLEARED = 4;
+    static final byte SCORE = 5;
+    static final byte FREEZE = 6;
+    static final byte COUNTDOWN = 7;
+    static final byte WINNERS = 8;
+    static final byte GAME_OVER = 9;
+
+    static final int HELLO_SIZE = 1;
+    static final int PRESS_SIZE = 3;
+
+    /**
+     * @param type - the type of a message from the server (not WINNERS).
+     * @return     - the size of the message, including the type byte, or -1 for an unknown type.
+     */
+    static int serverMessageSize(byte type) {
+        switch (type) {
+            case WELCOME: return 7;
+            case CARD: return 5;
+            case TOKEN: return 6;
+            case TOKENS_CLEARED: return 3;
+            case SCORE: return 7;
+            case FREEZE: return 7;
+            case COUNTDOWN: return 6;
+            case GAME_OVER: return 1;
+            default: return -1;
+        }
+    }
+}
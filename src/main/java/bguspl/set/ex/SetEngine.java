@@ -0,0 +1,279 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Fast set lookups based on the completion rule: any featureSize - 1 distinct cards are completed into a legal set
+ * by at most one card, which can be computed feature by feature instead of being searched for.
+ * The rule needs featureSize >= 3: with two values per feature, any two distinct cards form a set (every feature is
+ * either the same or different), so smaller decks are searched by testing every combination of featureSize cards.
+ */
+public class SetEngine {
+
+    /**
+     * Returned by completion when the given cards cannot be completed into a set.
+     */
+    public static final int NONE = -1;
+
+    /**
+     * Where the cards of a search come from, see findSet.
+     */
+    private static final byte NOT_AVAILABLE = 0;
+    private static final byte PRIMARY = 1;
+    private static final byte SECONDARY = 2;
+
+    /**
+     * The number of combinations checked between two looks at the deadline.
+     */
+    private static final int DEADLINE_CHECK_INTERVAL = 64;
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    /**
+     * Game entities.
+     */
+    private final int featureCount;
+    private final int featureSize;
+    private final int deckSize;
+
+    /**
+     * The features of every card in the deck (same encoding as Util.cardToFeatures).
+     */
+    private final int[][] features;
+
+    /**
+     * The value each feature adds to a card id.
+     */
+    private final int[] featureWeight;
+
+    /**
+     * The sum of all the values a single feature can take, used to find the one value missing from featureSize - 1
+     * distinct values.
+     */
+    private final int valuesSum;
+
+    /**
+     * True iff the completion of featureSize - 1 cards is unique (featureSize >= 3).
+     */
+    private final boolean uniqueCompletion;
+
+    /**
+     * The arrays a search works in, so a player searching again and again does not allocate them every time.
+     * Not thread safe: each thread searching with findSet(int[], int, long, Search) should have its own.
+     */
+    public static final class Search {
+
+        private final byte[] source;
+        private final int[] combination;
+        private final int[] cards;
+        private final int[] set;
+
+        private Search(int deckSize, int featureSize) {
+            this.source = new byte[deckSize];
+            this.combination = new int[featureSize];
+            this.cards = new int[featureSize];
+            this.set = new int[featureSize];
+        }
+    }
+
+    public SetEngine(Config config) {
+        this.featureCount = config.featureCount;
+        this.featureSize = config.featureSize;
+        this.deckSize = config.deckSize;
+        this.featureWeight = new int[featureCount];
+        int weight = 1;
+        for (int i = featureCount - 1; i >= 0; i--) {
+            featureWeight[i] = weight;
+            weight *= featureSize;
+        }
+        this.features = new int[deckSize][featureCount];
+        for (int card = 0; card < deckSize; card++) {
+            int rest = card;
+            for (int i = featureCount - 1; i >= 0; i--) {
+                features[card][i] = rest % featureSize;
+                rest /= featureSize;
+            }
+        }
+        this.valuesSum = featureSize * (featureSize - 1) / 2;
+        this.uniqueCompletion = featureSize >= 3;
+    }
+
+    /**
+     * @return - new arrays for findSet(int[], int, long, Search).
+     */
+    public Search newSearch() {
+        return new Search(deckSize, featureSize);
+    }
+
+    /**
+     * Computes the only card that completes featureSize - 1 distinct cards into a legal set.
+     * Only meaningful when featureSize >= 3, otherwise the completion is not unique and NONE is returned.
+     *
+     * @param cards  - the cards to complete (only the first length entries are used).
+     * @param length - the number of cards to complete, should be featureSize - 1.
+     * @return       - the completing card id, or NONE if there is no such card.
+     */
+    public int completion(int[] cards, int length) {
+        if (!uniqueCompletion) return NONE;
+        int card = 0;
+        for (int i = 0; i < featureCount; i++) {
+            long seen = 0;
+            int sum = 0;
+            for (int j = 0; j < length; j++) {
+                int value = features[cards[j]][i];
+                seen |= 1L << value;
+                sum += value;
+            }
+            int distinct = Long.bitCount(seen);
+            int value;
+            if (distinct == length) // all different, the missing value completes them
+                value = valuesSum - sum;
+            else if (distinct == 1) // all the same
+                value = features[cards[0]][i];
+            else
+                return NONE;
+            card += value * featureWeight[i];
+        }
+        return card;
+    }
+
+    /**
+     * Finds a legal set in the given collection of cards.
+     *
+     * @param cards - a collection of cards.
+     * @return      - the card ids of a legal set (sorted), or null if there is none.
+     */
+    public int[] findSet(List<Integer> cards) {
+        return findSet(cards, Collections.emptyList(), 0);
+    }
+
+    /**
+     * Finds a legal set made of the primary cards and at most maxSecondary of the secondary cards.
+     * Sets that use fewer secondary cards are usually found first.
+     *
+     * @param primary      - cards that may always be used (e.g. the cards on the table).
+     * @param secondary    - cards of which only a limited number may be used (e.g. the deck).
+     * @param maxSecondary - the maximum number of secondary cards in the set.
+     * @return             - the card ids of a legal set (sorted), or null if there is none.
+     */
+    public int[] findSet(List<Integer> primary, List<Integer> secondary, int maxSecondary) {
+        int n = primary.size() + secondary.size();
+        if (n < featureSize) return null;
+
+        Search search = newSearch();
+        int[] all = new int[n];
+        int k = 0;
+        for (Integer card : primary) {
+            search.source[card] = PRIMARY;
+            all[k++] = card;
+        }
+        for (Integer card : secondary) {
+            search.source[card] = SECONDARY;
+            all[k++] = card;
+        }
+        return findSet(all, n, search, maxSecondary, NO_DEADLINE);
+    }
+
+    /**
+     * Finds a legal set in the given cards, giving up once the deadline has passed. Allocates nothing.
+     *
+     * @param cards         - the cards (only the first length entries are used).
+     * @param length        - the number of cards.
+     * @param deadlineNanos - a System.nanoTime() value after which the search stops.
+     * @param search        - the arrays to search in, see newSearch.
+     * @return              - the card ids of a legal set (sorted, in an array of the search that the next search
+     *                        overwrites), or null if there is none or the search gave up.
+     */
+    public int[] findSet(int[] cards, int length, long deadlineNanos, Search search) {
+        if (length < featureSize) return null;
+        for (int i = 0; i < length; i++)
+            search.source[cards[i]] = PRIMARY;
+        try {
+            return findSet(cards, length, search, 0, deadlineNanos);
+        } finally {
+            for (int i = 0; i < length; i++) // leave the search clean for the next one
+                search.source[cards[i]] = NOT_AVAILABLE;
+        }
+    }
+
+    /**
+     * Goes over the combinations of featureSize - 1 cards and looks up the card completing each of them, or over the
+     * combinations of featureSize cards and tests each of them when the completion is not unique.
+     *
+     * @param all           - the cards to search in (only the first n entries are used).
+     * @param n             - the number of cards.
+     * @param search        - its source is PRIMARY/SECONDARY for every card in all, NOT_AVAILABLE for any other card.
+     * @param maxSecondary  - the maximum number of secondary cards in the set.
+     * @param deadlineNanos - a System.nanoTime() value after which the search stops (or NO_DEADLINE).
+     * @return              - the card ids of a legal set (sorted, the set array of the search), or null.
+     */
+    private int[] findSet(int[] all, int n, Search search, int maxSecondary, long deadlineNanos) {
+        int r = uniqueCompletion ? featureSize - 1 : featureSize;
+        if (r <= 0 || r > n) return null;
+        byte[] source = search.source;
+        int[] combination = search.combination;
+        int[] cards = search.cards;
+        for (int i = 0; i < r; i++)
+            combination[i] = i;
+
+        int checked = 0;
+        while (combination[r - 1] < n) {
+            if (deadlineNanos != NO_DEADLINE && ++checked % DEADLINE_CHECK_INTERVAL == 0
+                    && System.nanoTime() - deadlineNanos > 0) return null;
+
+            int fromSecondary = 0;
+            for (int i = 0; i < r; i++) {
+                cards[i] = all[combination[i]];
+                if (source[cards[i]] == SECONDARY) fromSecondary++;
+            }
+            if (!uniqueCompletion) {
+                if (fromSecondary <= maxSecondary && isSet(cards, r)) {
+                    int[] set = search.set;
+                    System.arraycopy(cards, 0, set, 0, r);
+                    Arrays.sort(set);
+                    return set;
+                }
+            } else if (fromSecondary <= maxSecondary) {
+                int card = completion(cards, r);
+                if (card != NONE && source[card] != NOT_AVAILABLE && !contains(cards, r, card)
+                        && fromSecondary + (source[card] == SECONDARY ? 1 : 0) <= maxSecondary) {
+                    int[] set = search.set;
+                    System.arraycopy(cards, 0, set, 0, r);
+                    set[r] = card;
+                    Arrays.sort(set);
+                    return set;
+                }
+            }
+
+            // generate next combination in lexicographic order
+            int t = r - 1;
+            while (t != 0 && combination[t] == n - r + t) --t;
+            combination[t]++;
+            for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+        }
+        return null;
+    }
+
+    /**
+     * Same rule as Util.testSet: every feature is either the same in all the cards or different in all of them.
+     */
+    private boolean isSet(int[] cards, int length) {
+        for (int i = 0; i < featureCount; i++) {
+            long seen = 0;
+            for (int j = 0; j < length; j++)
+                seen |= 1L << features[cards[j]][i];
+            int distinct = Long.bitCount(seen);
+            if ((distinct == 1) == (distinct == length)) return false;
+        }
+        return true;
+    }
+
+    private static boolean contains(int[] cards, int length, int card) {
+        for (int i = 0; i < length; i++)
+            if (cards[i] == card) return true;
+        return false;
+    }
+}
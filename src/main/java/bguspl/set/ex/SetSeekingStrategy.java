@@ -0,0 +1,80 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks for a legal set on the table and plays it: removes the player's other tokens and places tokens on the set.
+ * Reacts to a new table after a normally distributed delay (see Config.computerReactionMillis).
+ */
+class SetSeekingStrategy implements ComputerStrategy {
+
+    private final SetEngine engine;
+
+    /**
+     * The cards on the table without the empty slots, the slots of the set found and the arrays of the search
+     * (reused between decisions).
+     */
+    private final int[] cards;
+    private final int[] setSlots;
+    private final int[] chosenSlots;
+    private final SetEngine.Search search;
+
+    private final long reactionNanos;
+    private final long reactionDeviationNanos;
+
+    SetSeekingStrategy(Env env, SetEngine engine) {
+        this.engine = engine;
+        this.cards = new int[env.config.tableSize];
+        this.setSlots = new int[env.config.featureSize];
+        this.chosenSlots = new int[env.config.featureSize];
+        this.search = engine.newSearch();
+        this.reactionNanos = TimeUnit.MILLISECONDS.toNanos(env.config.computerReactionMillis);
+        this.reactionDeviationNanos = TimeUnit.MILLISECONDS.toNanos(env.config.computerReactionDeviationMillis);
+    }
+
+    @Override
+    public int decide(int[] slotToCard, ChosenSlots chosen, int[] presses, long budgetNanos) {
+        int length = 0;
+        for (int card : slotToCard)
+            if (card != Table.NO_CARD) cards[length++] = card;
+        int[] set = engine.findSet(cards, length, System.nanoTime() + budgetNanos, search);
+        if (set == null) return 0;
+
+        for (int i = 0; i < set.length; i++)
+            setSlots[i] = slotOf(slotToCard, set[i]);
+
+        int count = 0;
+        int chosenCount = chosen.getSlots(chosenSlots);
+        for (int i = 0; i < chosenCount; i++) // remove the tokens that are not on the set
+            if (!contains(setSlots, chosenSlots[i])) presses[count++] = chosenSlots[i];
+        for (int slot : setSlots)
+            if (!chosen.contains(slot)) presses[count++] = slot;
+        if (count == 0) {
+            // the player already has the set, its declaration lost the race for the slots: any other key retries it
+            for (int slot = 0; slot < slotToCard.length && count == 0; slot++)
+                if (!contains(setSlots, slot)) presses[count++] = slot;
+        }
+        return count;
+    }
+
+    @Override
+    public long reactionNanos() {
+        double reaction = reactionNanos + ThreadLocalRandom.current().nextGaussian() * reactionDeviationNanos;
+        return Math.max(0, (long) reaction);
+    }
+
+    private static int slotOf(int[] slotToCard, int card) {
+        for (int slot = 0; slot < slotToCard.length; slot++)
+            if (slotToCard[slot] == card) return slot;
+        return Table.NO_CARD;
+    }
+
+    private static boolean contains(int[] slots, int slot) {
+        for (int s : slots)
+            if (s == slot) return true;
+        return false;
+    }
+}
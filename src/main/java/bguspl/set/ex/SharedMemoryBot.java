@@ -0,0 +1,185 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * A stand-in for an out-of-process bot: plays the players of a SharedMemoryChannel by looking for a legal set in
+ * every new snapshot and pressing its slots, like SetSeekingStrategy without the reaction time.
+ * It runs until the game is over or the game stops updating the channel.
+ *
+ * Usage: java -cp target/classes bguspl.set.ex.SharedMemoryBot [channel file] [config file]
+ */
+public class SharedMemoryBot {
+
+    /**
+     * Give up if the game did not create the channel or did not update it for this long.
+     */
+    private static final long GAME_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * Plan again after this long even if the snapshot did not change (e.g. if some presses were dropped).
+     */
+    private static final long REPLAN_MILLIS = 200;
+
+    /**
+     * The time to wait for the game to handle the presses of a plan before planning again.
+     */
+    private static final long AWAIT_MILLIS = 50;
+
+    /**
+     * While waiting for a new snapshot the bot sleeps, starting short and doubling up to MAX_IDLE_NANOS.
+     */
+    private static final long MIN_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final SharedMemoryChannel channel;
+    private final SetEngine engine;
+
+    /**
+     * The last snapshot read.
+     */
+    private final int[] slotToCard;
+    private final boolean[] canAct;
+    private final long[][] tokens;
+
+    /**
+     * The cards on the table without the empty slots, and the slots of the set found.
+     */
+    private final int[] cards;
+    private final int[] setSlots;
+    private final SetEngine.Search search;
+
+    /**
+     * For each player: the cards its last presses were planned for, whether it could act, when the presses were
+     * planned and the tokens it should have once the game handles them. The bot does not plan again before the game
+     * handled the presses (or AWAIT_MILLIS passed), so it does not undo its own presses.
+     */
+    private final int[][] plannedCards;
+    private final boolean[] couldAct;
+    private final long[] plannedMillis;
+    private final long[][] expectedTokens;
+    private final boolean[] awaiting;
+
+    SharedMemoryBot(SharedMemoryChannel channel, Config config) {
+        this.channel = channel;
+        this.engine = new SetEngine(config);
+        this.slotToCard = new int[channel.tableSize()];
+        this.canAct = new boolean[channel.players()];
+        this.tokens = new long[channel.players()][channel.words()];
+        this.cards = new int[channel.tableSize()];
+        this.setSlots = new int[config.featureSize];
+        this.search = engine.newSearch();
+        this.plannedCards = new int[channel.players()][channel.tableSize()];
+        this.couldAct = new boolean[channel.players()];
+        this.plannedMillis = new long[channel.players()];
+        this.expectedTokens = new long[channel.players()][channel.words()];
+        this.awaiting = new boolean[channel.players()];
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get(args.length > 0 ? args[0] : "set-players.shm");
+        Logger logger = Logger.getLogger("SetBot");
+        Config config = new Config(logger, args.length > 1 ? args[1] : "config.properties");
+
+        SharedMemoryChannel channel = null;
+        long giveUp = System.currentTimeMillis() + GAME_TIMEOUT_MILLIS;
+        while (channel == null) {
+            if (file.toFile().exists()) channel = SharedMemoryChannel.open(file);
+            if (channel == null) {
+                if (System.currentTimeMillis() > giveUp) {
+                    logger.severe("the game did not create " + file + ", giving up.");
+                    return;
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+            }
+        }
+        try {
+            logger.info("playing players " + channel.firstPlayer() + " to "
+                    + (channel.firstPlayer() + channel.players() - 1) + ".");
+            new SharedMemoryBot(channel, config).play();
+        } finally {
+            channel.close();
+        }
+    }
+
+    void play() {
+        while (!channel.isGameOver() && System.currentTimeMillis() - channel.lastHeartbeat() < GAME_TIMEOUT_MILLIS) {
+            long sequence = channel.readSnapshot(slotToCard, canAct, tokens);
+            long now = System.currentTimeMillis();
+            for (int player = 0; player < canAct.length; player++) {
+                boolean started = canAct[player] && !couldAct[player];
+                couldAct[player] = canAct[player];
+                if (!canAct[player]) continue;
+                if (awaiting[player] && !started && !Arrays.equals(tokens[player], expectedTokens[player])
+                        && now - plannedMillis[player] < AWAIT_MILLIS) continue;
+                awaiting[player] = false;
+                boolean newCards = !Arrays.equals(slotToCard, plannedCards[player]);
+                if (newCards || started || now - plannedMillis[player] > REPLAN_MILLIS) {
+                    System.arraycopy(slotToCard, 0, plannedCards[player], 0, slotToCard.length);
+                    plannedMillis[player] = now;
+                    play(player);
+                }
+            }
+            long idleNanos = MIN_IDLE_NANOS;
+            while (channel.snapshotSequence() == sequence && !channel.isGameOver()
+                    && System.currentTimeMillis() - now < REPLAN_MILLIS) {
+                LockSupport.parkNanos(idleNanos);
+                idleNanos = Math.min(2 * idleNanos, MAX_IDLE_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Presses the keys that move the player's tokens to a legal set on the table, if there is one.
+     */
+    private void play(int player) {
+        int length = 0;
+        for (int card : slotToCard)
+            if (card != Table.NO_CARD) cards[length++] = card;
+        int[] set = engine.findSet(cards, length, Long.MAX_VALUE, search);
+        if (set == null) return;
+        for (int i = 0; i < set.length; i++)
+            for (int slot = 0; slot < slotToCard.length; slot++)
+                if (slotToCard[slot] == set[i]) setSlots[i] = slot;
+
+        boolean pressed = false;
+        System.arraycopy(tokens[player], 0, expectedTokens[player], 0, tokens[player].length);
+        for (int slot = 0; slot < slotToCard.length; slot++) // remove the tokens that are not on the set
+            if (hasToken(player, slot) && !isSetSlot(slot)) pressed |= press(player, slot);
+        for (int slot : setSlots)
+            if (!hasToken(player, slot)) pressed |= press(player, slot);
+        awaiting[player] = pressed;
+        if (!pressed) {
+            // the player already has the set, its declaration lost the race for the slots: any other key retries it
+            for (int slot = 0; slot < slotToCard.length && !pressed; slot++)
+                if (!isSetSlot(slot)) pressed = channel.offerPress(player, slot);
+        }
+    }
+
+    /**
+     * @return - true iff the press was sent (and the player's token on the slot is expected to toggle).
+     */
+    private boolean press(int player, int slot) {
+        if (!channel.offerPress(player, slot)) return false;
+        expectedTokens[player][slot / Long.SIZE] ^= 1L << (slot % Long.SIZE);
+        return true;
+    }
+
+    private boolean hasToken(int player, int slot) {
+        return (tokens[player][slot / Long.SIZE] & (1L << (slot % Long.SIZE))) != 0;
+    }
+
+    private boolean isSetSlot(int slot) {
+        for (int s : setSlots)
+            if (s == slot) return true;
+        return false;
+    }
+}
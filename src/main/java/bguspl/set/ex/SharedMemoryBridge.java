@@ -0,0 +1,208 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+import bguspl.set.ThreadLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Connects the players that are played by an out-of-process bot (see Config.externalPlayers) to a
+ * SharedMemoryChannel: a single thread publishes a new snapshot whenever the table or one of those players changes,
+ * and feeds the key presses the bot sent to the players, like the keyboard does for human players.
+ */
+class SharedMemoryBridge implements Runnable {
+
+    /**
+     * The number of key presses each ring holds.
+     */
+    private static final int RING_CAPACITY = 64;
+
+    /**
+     * Wait strategy when there is nothing to do: the number of busy spins and then yields before sleeping. The bot
+     * is another process and cannot wake the bridge up, so the bridge polls: the sleep starts short and doubles on
+     * every idle pass up to MAX_IDLE_NANOS, so an idle game wakes the bridge a hundred times a second at most.
+     */
+    private static final int SPINS = 100;
+    private static final int YIELDS = 10;
+    private static final long MIN_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * How often the game tells the bot it is still running (see SharedMemoryChannel.heartbeat).
+     */
+    private static final long HEARTBEAT_MILLIS = 500;
+
+    /**
+     * The time to wait for the bot process to exit once the game is over.
+     */
+    private static final long BOT_EXIT_MILLIS = 1000;
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * Game entities.
+     */
+    private final Table table;
+    private final Player[] players;
+
+    private final SharedMemoryChannel channel;
+
+    /**
+     * The last snapshot published.
+     */
+    private final int[] slotToCard;
+    private final boolean[] canAct;
+    private final long[][] tokens;
+    private long tableVersion = -1;
+
+    private final Thread thread;
+    private volatile boolean stopped;
+
+    /**
+     * The stand-in bot process, null if the bot is started by someone else (see Config.launchExternalBot).
+     */
+    private Process bot;
+
+    /**
+     * Creates the shared file for the players in [firstPlayer, firstPlayer + count).
+     *
+     * @throws IOException - if the file cannot be created.
+     */
+    SharedMemoryBridge(Env env, Table table, Player[] allPlayers, int firstPlayer, int count) throws IOException {
+        this.env = env;
+        this.table = table;
+        this.players = new Player[count];
+        System.arraycopy(allPlayers, firstPlayer, players, 0, count);
+        this.channel = SharedMemoryChannel.create(Paths.get(env.config.externalPlayersFile), firstPlayer, count,
+                env.config.tableSize, RING_CAPACITY);
+        this.slotToCard = new int[env.config.tableSize];
+        this.canAct = new boolean[count];
+        this.tokens = new long[count][channel.words()];
+        this.thread = new Thread(this, "shared-memory-bridge");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts the bridge thread and, if configured, the stand-in bot process.
+     */
+    void start() {
+        ThreadLogger.logStart(env.logger, thread.getName());
+        thread.start();
+        if (env.config.launchExternalBot) {
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            try {
+                bot = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        SharedMemoryBot.class.getName(), env.config.externalPlayersFile).inheritIO().start();
+                env.logger.info("started the stand-in bot for players " + channel.firstPlayer() + " to "
+                        + (channel.firstPlayer() + players.length - 1) + ".");
+            } catch (IOException e) {
+                env.logger.severe("cannot start the stand-in bot: " + e);
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        int idle = 0;
+        long idleNanos = MIN_IDLE_NANOS;
+        long lastHeartbeat = 0;
+        while (!stopped) {
+            boolean busy = publishIfChanged();
+            busy |= forwardPresses();
+            long now = System.currentTimeMillis();
+            if (now - lastHeartbeat >= HEARTBEAT_MILLIS) {
+                channel.heartbeat();
+                lastHeartbeat = now;
+            }
+            if (busy) {
+                idle = 0;
+                idleNanos = MIN_IDLE_NANOS;
+            } else if (idle < SPINS) {
+                idle++;
+            } else if (idle < SPINS + YIELDS) {
+                idle++;
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(this, idleNanos);
+                idleNanos = Math.min(2 * idleNanos, MAX_IDLE_NANOS);
+            }
+        }
+        ThreadLogger.logStop(env.logger, thread.getName());
+    }
+
+    /**
+     * Publishes a new snapshot if the table or the state of one of the players changed since the last one.
+     *
+     * @return - true iff a snapshot was published.
+     */
+    private boolean publishIfChanged() {
+        boolean changed = table.getVersion() != tableVersion;
+        for (int i = 0; i < players.length; i++) {
+            boolean acting = players[i].canAct();
+            if (acting != canAct[i]) {
+                canAct[i] = acting;
+                changed = true;
+            }
+            ChosenSlots chosen = players[i].getChosenSlots();
+            for (int word = 0; word < tokens[i].length; word++) {
+                long mask = chosen.word(word);
+                if (mask != tokens[i][word]) {
+                    tokens[i][word] = mask;
+                    changed = true;
+                }
+            }
+        }
+        if (changed) {
+            tableVersion = table.snapshot(slotToCard);
+            channel.publish(slotToCard, canAct, tokens);
+        }
+        return changed;
+    }
+
+    /**
+     * Hands the key presses the bot sent to the players.
+     *
+     * @return - true iff there were any.
+     */
+    private boolean forwardPresses() {
+        boolean any = false;
+        for (int i = 0; i < players.length; i++) {
+            for (int slot = channel.pollPress(i); slot != SharedMemoryChannel.EMPTY; slot = channel.pollPress(i)) {
+                any = true;
+                if (slot < 0 || slot >= slotToCard.length) {
+                    env.logger.warning("the bot pressed slot " + slot + " for player " + players[i].id + ", ignored.");
+                    continue;
+                }
+                players[i].offerKey(slot);
+            }
+        }
+        return any;
+    }
+
+    /**
+     * Tells the bot the game is over, stops the bridge thread and the stand-in bot.
+     */
+    void shutdown() {
+        channel.setGameOver();
+        stopped = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(env.config.shutdownTimeoutMillis);
+            if (bot != null && !bot.waitFor(BOT_EXIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                bot.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+    }
+}
@@ -0,0 +1,324 @@
+package bguspl.set.ex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A memory mapped file shared by the game and an out-of-process bot that plays some of the computer players
+ * (see Config.externalPlayers). The game publishes snapshots of the table in it and the bot sends key presses back
+ * through one ring per player, without sockets and without serializing anything: both sides read and write the
+ * primitive fields in place.
+ *
+ * Layout (native byte order):
+ * - header: magic, layout version, number of players, id of the first player, table size, ring capacity,
+ *   game over flag and the game's heartbeat (System.currentTimeMillis).
+ * - snapshot, guarded by a sequence number (a seqlock, odd while the game writes it): the card in each slot and,
+ *   for each player, whether its key presses are handled right now and the slots it has tokens on (a bit mask,
+ *   like ChosenSlots).
+ * - one ring of key presses per player: the head (written by the game) and the tail (written by the bot) on
+ *   separate cache lines, followed by the slots.
+ *
+ * Each field has a single writer. The order of the reads and writes is kept with fences (VarHandle on java 9+,
+ * sun.misc.Unsafe on java 8).
+ */
+final class SharedMemoryChannel implements Closeable {
+
+    /**
+     * Returned by pollPress when the ring is empty.
+     */
+    static final int EMPTY = -1;
+
+    private static final int MAGIC = 0x53455421; // "SET!"
+    private static final int LAYOUT_VERSION = 1;
+    private static final int CACHE_LINE = 64;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int LAYOUT_VERSION_OFFSET = 4;
+    private static final int PLAYERS_OFFSET = 8;
+    private static final int FIRST_PLAYER_OFFSET = 12;
+    private static final int TABLE_SIZE_OFFSET = 16;
+    private static final int RING_CAPACITY_OFFSET = 20;
+    private static final int GAME_OVER_OFFSET = 24;
+    private static final int HEARTBEAT_OFFSET = 32;
+    private static final int SEQUENCE_OFFSET = CACHE_LINE;
+    private static final int CARDS_OFFSET = SEQUENCE_OFFSET + Long.BYTES;
+
+    private static final int RING_HEAD = 0;
+    private static final int RING_TAIL = CACHE_LINE;
+    private static final int RING_SLOTS = 2 * CACHE_LINE;
+
+    private static final MethodHandle ACQUIRE_FENCE = fence("acquireFence", "loadFence");
+    private static final MethodHandle RELEASE_FENCE = fence("releaseFence", "storeFence");
+
+    private final FileChannel file;
+    private final MappedByteBuffer buffer;
+
+    private final int players;
+    private final int firstPlayer;
+    private final int tableSize;
+    private final int words;
+    private final int ringCapacity;
+
+    /**
+     * Offsets of the per-player parts of the snapshot and of the rings.
+     */
+    private final int playersOffset;
+    private final int playerStride;
+    private final int ringsOffset;
+    private final int ringStride;
+
+    private SharedMemoryChannel(FileChannel file, int players, int firstPlayer, int tableSize, int ringCapacity)
+            throws IOException {
+        this.file = file;
+        this.players = players;
+        this.firstPlayer = firstPlayer;
+        this.tableSize = tableSize;
+        this.words = ChosenSlots.words(tableSize);
+        this.ringCapacity = ringCapacity;
+        this.playersOffset = align(CARDS_OFFSET + tableSize * Integer.BYTES, Long.BYTES);
+        this.playerStride = Long.BYTES + words * Long.BYTES;
+        this.ringsOffset = align(playersOffset + players * playerStride, CACHE_LINE);
+        this.ringStride = align(RING_SLOTS + ringCapacity * Integer.BYTES, CACHE_LINE);
+        this.buffer = file.map(FileChannel.MapMode.READ_WRITE, 0, (long) ringsOffset + (long) players * ringStride);
+        this.buffer.order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Creates (or overwrites) the file. Called by the game.
+     *
+     * @param path         - the file to map.
+     * @param firstPlayer  - the id of the first player played by the bot.
+     * @param players      - the number of players played by the bot.
+     * @param tableSize    - the number of slots on the table.
+     * @param ringCapacity - the number of key presses each ring holds.
+     * @return             - the channel, with an empty snapshot.
+     * @throws IOException - if the file cannot be created or mapped.
+     */
+    static SharedMemoryChannel create(Path path, int firstPlayer, int players, int tableSize, int ringCapacity)
+            throws IOException {
+        FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        SharedMemoryChannel channel = new SharedMemoryChannel(file, players, firstPlayer, tableSize, ringCapacity);
+        MappedByteBuffer buffer = channel.buffer;
+        buffer.putInt(LAYOUT_VERSION_OFFSET, LAYOUT_VERSION);
+        buffer.putInt(PLAYERS_OFFSET, players);
+        buffer.putInt(FIRST_PLAYER_OFFSET, firstPlayer);
+        buffer.putInt(TABLE_SIZE_OFFSET, tableSize);
+        buffer.putInt(RING_CAPACITY_OFFSET, ringCapacity);
+        buffer.putLong(HEARTBEAT_OFFSET, System.currentTimeMillis());
+        for (int slot = 0; slot < tableSize; slot++)
+            buffer.putInt(CARDS_OFFSET + slot * Integer.BYTES, Table.NO_CARD);
+        releaseFence();
+        buffer.putInt(MAGIC_OFFSET, MAGIC); // last, the bot waits for it
+        return channel;
+    }
+
+    /**
+     * Maps a file created by the game. Called by the bot.
+     *
+     * @param path - the file to map.
+     * @return     - the channel, or null if the game did not finish creating the file yet.
+     * @throws IOException - if the file cannot be mapped or has a different layout.
+     */
+    static SharedMemoryChannel open(Path path) throws IOException {
+        FileChannel file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (file.size() < CARDS_OFFSET) {
+            file.close();
+            return null;
+        }
+        MappedByteBuffer header = file.map(FileChannel.MapMode.READ_WRITE, 0, CARDS_OFFSET);
+        header.order(ByteOrder.nativeOrder());
+        if (header.getInt(MAGIC_OFFSET) != MAGIC) {
+            file.close();
+            return null;
+        }
+        acquireFence();
+        if (header.getInt(LAYOUT_VERSION_OFFSET) != LAYOUT_VERSION) {
+            file.close();
+            throw new IOException("unsupported layout version " + header.getInt(LAYOUT_VERSION_OFFSET));
+        }
+        int players = header.getInt(PLAYERS_OFFSET);
+        int firstPlayer = header.getInt(FIRST_PLAYER_OFFSET);
+        int tableSize = header.getInt(TABLE_SIZE_OFFSET);
+        int ringCapacity = header.getInt(RING_CAPACITY_OFFSET);
+        return new SharedMemoryChannel(file, players, firstPlayer, tableSize, ringCapacity);
+    }
+
+    int players() {
+        return players;
+    }
+
+    int firstPlayer() {
+        return firstPlayer;
+    }
+
+    int tableSize() {
+        return tableSize;
+    }
+
+    int words() {
+        return words;
+    }
+
+    /**
+     * Writes a new snapshot. Called by the game only.
+     *
+     * @param slotToCard - the card in each slot, or Table.NO_CARD.
+     * @param canAct     - for each player, true iff its key presses are handled right now.
+     * @param tokens     - for each player, the slots it has tokens on (words() longs each).
+     */
+    void publish(int[] slotToCard, boolean[] canAct, long[][] tokens) {
+        long sequence = buffer.getLong(SEQUENCE_OFFSET);
+        buffer.putLong(SEQUENCE_OFFSET, sequence + 1);
+        releaseFence();
+        for (int slot = 0; slot < tableSize; slot++)
+            buffer.putInt(CARDS_OFFSET + slot * Integer.BYTES, slotToCard[slot]);
+        for (int player = 0; player < players; player++) {
+            int offset = playersOffset + player * playerStride;
+            buffer.putInt(offset, canAct[player] ? 1 : 0);
+            for (int word = 0; word < words; word++)
+                buffer.putLong(offset + Long.BYTES + word * Long.BYTES, tokens[player][word]);
+        }
+        releaseFence();
+        buffer.putLong(SEQUENCE_OFFSET, sequence + 2);
+    }
+
+    /**
+     * @return - the sequence number of the last snapshot (changes with every publish).
+     */
+    long snapshotSequence() {
+        long sequence = buffer.getLong(SEQUENCE_OFFSET);
+        acquireFence();
+        return sequence;
+    }
+
+    /**
+     * Copies the last snapshot, reading it again until it is not torn by a publish. Called by the bot.
+     *
+     * @return - the sequence number of the snapshot copied.
+     */
+    long readSnapshot(int[] slotToCard, boolean[] canAct, long[][] tokens) {
+        while (true) {
+            long sequence = buffer.getLong(SEQUENCE_OFFSET);
+            acquireFence();
+            for (int slot = 0; slot < tableSize; slot++)
+                slotToCard[slot] = buffer.getInt(CARDS_OFFSET + slot * Integer.BYTES);
+            for (int player = 0; player < players; player++) {
+                int offset = playersOffset + player * playerStride;
+                canAct[player] = buffer.getInt(offset) != 0;
+                for (int word = 0; word < words; word++)
+                    tokens[player][word] = buffer.getLong(offset + Long.BYTES + word * Long.BYTES);
+            }
+            acquireFence();
+            if ((sequence & 1) == 0 && sequence == buffer.getLong(SEQUENCE_OFFSET)) return sequence;
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Sends a key press to the game. Called by the bot only.
+     *
+     * @param player - the index of the player (0 for firstPlayer).
+     * @param slot   - the slot pressed.
+     * @return       - true iff the press was added, false if the ring is full.
+     */
+    boolean offerPress(int player, int slot) {
+        int ring = ringsOffset + player * ringStride;
+        long tail = buffer.getLong(ring + RING_TAIL);
+        long head = buffer.getLong(ring + RING_HEAD);
+        acquireFence();
+        if (tail - head >= ringCapacity) return false;
+        buffer.putInt(ring + RING_SLOTS + (int) (tail % ringCapacity) * Integer.BYTES, slot);
+        releaseFence();
+        buffer.putLong(ring + RING_TAIL, tail + 1);
+        return true;
+    }
+
+    /**
+     * Takes the next key press the bot sent. Called by the game only.
+     *
+     * @param player - the index of the player (0 for firstPlayer).
+     * @return       - the slot pressed, or EMPTY if there is none.
+     */
+    int pollPress(int player) {
+        int ring = ringsOffset + player * ringStride;
+        long head = buffer.getLong(ring + RING_HEAD);
+        long tail = buffer.getLong(ring + RING_TAIL);
+        acquireFence();
+        if (head >= tail) return EMPTY;
+        int slot = buffer.getInt(ring + RING_SLOTS + (int) (head % ringCapacity) * Integer.BYTES);
+        releaseFence();
+        buffer.putLong(ring + RING_HEAD, head + 1);
+        return slot;
+    }
+
+    void heartbeat() {
+        buffer.putLong(HEARTBEAT_OFFSET, System.currentTimeMillis());
+    }
+
+    long lastHeartbeat() {
+        return buffer.getLong(HEARTBEAT_OFFSET);
+    }
+
+    void setGameOver() {
+        releaseFence();
+        buffer.putInt(GAME_OVER_OFFSET, 1);
+    }
+
+    boolean isGameOver() {
+        return buffer.getInt(GAME_OVER_OFFSET) != 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private static int align(int offset, int alignment) {
+        return (offset + alignment - 1) / alignment * alignment;
+    }
+
+    private static void acquireFence() {
+        try {
+            ACQUIRE_FENCE.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void releaseFence() {
+        try {
+            RELEASE_FENCE.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return - VarHandle's static fence if there is one (java 9+), otherwise the fence of sun.misc.Unsafe.
+     */
+    private static MethodHandle fence(String varHandleFence, String unsafeFence) {
+        MethodType type = MethodType.methodType(void.class);
+        try {
+            return MethodHandles.publicLookup().findStatic(Class.forName("java.lang.invoke.VarHandle"), varHandleFence, type);
+        } catch (ReflectiveOperationException ignored) {
+        }
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.publicLookup().findVirtual(unsafeClass, unsafeFence, type).bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Shuts down the players' threads: signals all of them at once and then waits for all of them against a single
+ * deadline, instead of waiting for each player before signalling the next one.
+ */
+class ShutdownCoordinator {
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    ShutdownCoordinator(Env env) {
+        this.env = env;
+    }
+
+    /**
+     * Terminates the players' threads (and their ai threads) and waits for them in reverse order to the order they
+     * were created in. Threads that did not terminate before the deadline are reported and left behind.
+     *
+     * @param players - the players, in the order their threads were created.
+     * @return        - true iff all the threads terminated before the deadline.
+     */
+    boolean shutdown(Player[] players) {
+        // signal everyone first, so the slow ones terminate in parallel
+        for (int i = players.length - 1; i >= 0; i--) {
+            players[i].terminate();
+            interrupt(players[i].getAiThread());
+            interrupt(players[i].getPlayerThread());
+        }
+
+        // each player thread creates its ai thread, so the ai thread goes first
+        long deadline = System.currentTimeMillis() + env.config.shutdownTimeoutMillis;
+        List<String> missed = new LinkedList<>();
+        boolean interrupted = false;
+        for (int i = players.length - 1; i >= 0; i--) {
+            interrupted |= join(players[i].getAiThread(), deadline, missed);
+            interrupted |= join(players[i].getPlayerThread(), deadline, missed);
+        }
+        if (interrupted) Thread.currentThread().interrupt(); // restored only now, so it does not cut the joins short
+
+        if (!missed.isEmpty())
+            env.logger.warning("threads that missed the shutdown deadline of " + env.config.shutdownTimeoutMillis + "ms: " + missed);
+        return missed.isEmpty();
+    }
+
+    private void interrupt(Thread thread) {
+        if (thread != null) thread.interrupt();
+    }
+
+    /**
+     * Waits for a thread until the deadline, even if the waiting thread is interrupted meanwhile.
+     *
+     * @return - true iff the waiting thread was interrupted.
+     */
+    private boolean join(Thread thread, long deadline, List<String> missed) {
+        if (thread == null) return false;
+        boolean interrupted = false;
+        long timeLeft;
+        while (thread.isAlive() && (timeLeft = deadline - System.currentTimeMillis()) > 0) {
+            try {
+                thread.join(timeLeft);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (thread.isAlive()) missed.add(thread.getName());
+        else env.logger.info("thread " + thread.getName() + " joined.");
+        return interrupted;
+    }
+}
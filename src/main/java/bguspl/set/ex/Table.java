@@ -2,11 +2,15 @@ package bguspl.set.ex;
 
 import bguspl.set.Env;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
 import java.util.stream.Collectors;
 
 
@@ -47,6 +51,33 @@ public class Table {
      */
     private final int tableSize;
 
+    /**
+     * Marks an empty slot in a snapshot of the table.
+     */
+    public static final int NO_CARD = -1;
+
+    /**
+     * Incremented on every change of the cards on the table, lets other threads find out if what they read earlier is
+     * still up to date.
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Write locked by the dealer while it changes the cards. Other threads read the cards with an optimistic read
+     * (see tryOptimisticRead and validate), without locking the table.
+     */
+    private final StampedLock cardsLock = new StampedLock();
+
+    /**
+     * A claim word per slot: the high 32 bits count the cards placed in and removed from the slot, the low 32 bits
+     * hold the id + 1 of the player whose declared set reserved the slot (FREE if none).
+     * Players reserve their slots with CAS before declaring a set, so overlapping sets never reach the dealer together.
+     */
+    private final AtomicLongArray slotClaims;
+    private static final long FREE = 0;
+    private static final long OWNER_MASK = 0xFFFFFFFFL;
+    private static final long ONE_VERSION = 1L << 32;
+
     /**
      * Constructor for testing.
      *
@@ -61,6 +92,7 @@ public class Table {
         this.cardToSlot = cardToSlot;
         this.tableSize = env.config.tableSize;
         this.cardsOnTable = new LinkedList<>();
+        this.slotClaims = new AtomicLongArray(slotToCard.length);
     }
 
     /**
@@ -110,37 +142,55 @@ public class Table {
      *
      * @post - the card placed is on the table, in the assigned slot.
      */
-    public synchronized void placeCard(int card, int slot) {
+    public void placeCard(int card, int slot) {
         try {
-            Thread.sleep(env.config.tableDelayMillis);
+            Thread.sleep(env.config.tableDelayMillis); // not holding the table, so players can place tokens meanwhile
         } catch (InterruptedException ignored) {}
 
-        cardToSlot[card] = slot;
-        slotToCard[slot] = card;
-        cardsOnTable.add(card);
-        env.ui.placeCard(card, slot);
+        synchronized (this) {
+            long stamp = cardsLock.writeLock();
+            try {
+                cardToSlot[card] = slot;
+                slotToCard[slot] = card;
+                resetClaim(slot);
+                version.incrementAndGet();
+            } finally {
+                cardsLock.unlockWrite(stamp);
+            }
+            cardsOnTable.add(card);
+            env.ui.placeCard(card, slot);
+        }
     }
 
     /**
      * Removes a card from a grid slot on the table.
      * @param slot - the slot from which to remove the card.
      */
-    public synchronized void removeCard(int slot) {
+    public void removeCard(int slot) {
         try {
-            Thread.sleep(env.config.tableDelayMillis);
+            Thread.sleep(env.config.tableDelayMillis); // not holding the table, so players can remove tokens meanwhile
         } catch (InterruptedException ignored) {}
 
-        while (!tokensOnTable.elementAt(slot).isEmpty()) {
-            removeToken(tokensOnTable.elementAt(slot).remove(0), slot);
-        } 
-        Integer card = slotToCard[slot];
-        if(card != null){
-            cardToSlot[card] = null;
-            slotToCard[slot] = null;
-            if(cardsOnTable.contains(card)){
-                cardsOnTable.remove(cardsOnTable.indexOf(card));
+        synchronized (this) {
+            while (!tokensOnTable.elementAt(slot).isEmpty()) {
+                removeToken(tokensOnTable.elementAt(slot).remove(0), slot);
+            }
+            Integer card = slotToCard[slot];
+            if(card != null){
+                long stamp = cardsLock.writeLock();
+                try {
+                    cardToSlot[card] = null;
+                    slotToCard[slot] = null;
+                    resetClaim(slot);
+                    version.incrementAndGet();
+                } finally {
+                    cardsLock.unlockWrite(stamp);
+                }
+                if(cardsOnTable.contains(card)){
+                    cardsOnTable.remove(cardsOnTable.indexOf(card));
+                }
+                env.ui.removeCard(slot);
             }
-            env.ui.removeCard(slot);
         }
     }
 
@@ -184,6 +234,121 @@ public class Table {
         return tokensOnTable;
     }
 
+    /**
+     * Atomically reserves the slots of a set a player is about to declare. Either all the slots are reserved or none.
+     * Does not lock the table.
+     *
+     * @param player - the player declaring the set.
+     * @param slots  - the slots of the set.
+     * @return       - true iff all the slots were reserved for the player, false if another player's declared set
+     *                 already reserved one of them.
+     */
+    public boolean reserveSlots(int player, int[] slots) {
+        return reserveSlots(player, slots, slots.length);
+    }
+
+    /**
+     * Reserves the first count slots of the array (see reserveSlots(int, int[])), so a reused buffer can be passed.
+     */
+    public boolean reserveSlots(int player, int[] slots, int count) {
+        long owner = player + 1;
+        for (int i = 0; i < count; i++) {
+            long claim;
+            do {
+                claim = slotClaims.get(slots[i]);
+                if ((claim & OWNER_MASK) != FREE) {
+                    for (int j = 0; j < i; j++)
+                        release(player, slots[j]);
+                    return false;
+                }
+            } while (!slotClaims.compareAndSet(slots[i], claim, claim | owner));
+        }
+        return true;
+    }
+
+    /**
+     * Releases all the slots reserved by a player's declared set. Does not lock the table.
+     *
+     * @param player - the player whose slots should be released.
+     */
+    public void releaseSlots(int player) {
+        for (int slot = 0; slot < slotClaims.length(); slot++)
+            release(player, slot);
+    }
+
+    private void release(int player, int slot) {
+        long claim = slotClaims.get(slot);
+        // fails only if the card was replaced meanwhile, which releases the slot anyway
+        if ((claim & OWNER_MASK) == player + 1)
+            slotClaims.compareAndSet(slot, claim, claim & ~OWNER_MASK);
+    }
+
+    /**
+     * Called while the card in a slot changes: starts a new slot version without an owner.
+     */
+    private void resetClaim(int slot) {
+        slotClaims.set(slot, (slotClaims.get(slot) & ~OWNER_MASK) + ONE_VERSION);
+    }
+
+    /**
+     * @return - the current version of the cards on the table (not synchronized, see version).
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Starts reading the cards on the table without locking it.
+     *
+     * @return - a stamp to pass to validate after reading, 0 if the dealer is changing the cards right now.
+     */
+    public long tryOptimisticRead() {
+        return cardsLock.tryOptimisticRead();
+    }
+
+    /**
+     * @param stamp - a stamp returned by tryOptimisticRead.
+     * @return      - true iff the cards did not change since the stamp was taken, so what was read since is not torn.
+     */
+    public boolean validate(long stamp) {
+        return stamp != 0 && cardsLock.validate(stamp);
+    }
+
+    /**
+     * Copies the cards on the table, without locking it unless the dealer changes the cards during the copy.
+     *
+     * @param into - filled with the card in each slot, or NO_CARD if the slot is empty.
+     * @return     - the version of the cards the copy was taken at.
+     */
+    public long snapshot(int[] into) {
+        long stamp = cardsLock.tryOptimisticRead();
+        long copied = copySlots(into);
+        if (stamp != 0 && cardsLock.validate(stamp)) return copied;
+
+        stamp = cardsLock.readLock(); // the dealer changed the cards while we were reading, read again under the lock
+        try {
+            return copySlots(into);
+        } finally {
+            cardsLock.unlockRead(stamp);
+        }
+    }
+
+    private long copySlots(int[] into) {
+        long copied = version.get();
+        for (int i = 0; i < into.length; i++) {
+            Integer card = slotToCard[i];
+            into[i] = card == null ? NO_CARD : card;
+        }
+        return copied;
+    }
+
+    /**
+     * @return - a copy of the list of cards that are currently on the table.
+     */
+    public synchronized List<Integer> getCardsOnTable() {
+        return new ArrayList<>(cardsOnTable);
+    }
+
     public synchronized boolean hasNoSetOnTable(){
             return env.util.findSets(cardsOnTable, 1).size() == 0;
     }
@@ -0,0 +1,220 @@
+package bguspl.set.ex;
+
+import bguspl.set.ThreadLogger;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+/**
+ * A hashed timer wheel with a tick of one millisecond, shared by all the players to time their freezes.
+ * A single thread runs the scheduled tasks; it sleeps until the next occupied bucket and does not wake up at all
+ * while nothing is scheduled.
+ */
+public class TimerWheel implements Runnable {
+
+    private static final long TICK_NANOS = 1000000L;
+    private static final int WHEEL_SIZE = 4096; // must be a power of 2
+    private static final int MASK = WHEEL_SIZE - 1;
+
+    /**
+     * A scheduled task.
+     */
+    public static final class Timeout {
+
+        private final long deadlineTick;
+        private final Runnable task;
+        private Timeout next;
+        private volatile boolean cancelled;
+
+        private Timeout(long deadlineTick, Runnable task) {
+            this.deadlineTick = deadlineTick;
+            this.task = task;
+        }
+
+        /**
+         * Makes sure the task will not run (if it did not run already).
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * The instance shared by all the players (null if not started).
+     */
+    private static TimerWheel shared;
+
+    /**
+     * The buckets of the wheel, each one a linked list of timeouts (used by the wheel thread only).
+     */
+    private final Timeout[] wheel = new Timeout[WHEEL_SIZE];
+
+    /**
+     * Timeouts that were scheduled but not added to the wheel yet.
+     */
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The number of timeouts in the wheel.
+     */
+    private int scheduled;
+
+    /**
+     * The last tick whose bucket was handled.
+     */
+    private long lastTick;
+
+    private final LongSupplier clock;
+    private final long startNanos;
+    private final Logger logger;
+    private final Thread thread;
+    private volatile boolean stopped;
+
+    private TimerWheel(Logger logger) {
+        this(logger, System::nanoTime);
+    }
+
+    /**
+     * Creates a wheel without starting its thread: the tasks run when runDue is called (used for testing).
+     *
+     * @param logger - the logger.
+     * @param clock  - the time in nanoseconds, like System.nanoTime.
+     */
+    TimerWheel(Logger logger, LongSupplier clock) {
+        this.logger = logger;
+        this.clock = clock;
+        this.startNanos = clock.getAsLong();
+        this.thread = new Thread(this, "timer-wheel");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * @param logger - used to log the wheel thread, if it is started by this call.
+     * @return       - the timer wheel shared by all the players, started on first use.
+     */
+    public static synchronized TimerWheel shared(Logger logger) {
+        if (shared == null) {
+            shared = new TimerWheel(logger);
+            ThreadLogger.logStart(logger, shared.thread.getName());
+            shared.thread.start();
+        }
+        return shared;
+    }
+
+    /**
+     * Stops the shared timer wheel (if started) without running the tasks that are still scheduled.
+     *
+     * @param timeoutMillis - the maximum time to wait for the wheel thread.
+     */
+    public static void stopShared(long timeoutMillis) {
+        TimerWheel wheel;
+        synchronized (TimerWheel.class) {
+            wheel = shared;
+            shared = null;
+        }
+        if (wheel == null) return;
+        wheel.stopped = true;
+        LockSupport.unpark(wheel.thread);
+        try {
+            wheel.thread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Schedules a task to run on the wheel thread once the delay has passed.
+     *
+     * @param delayMillis - the delay in milliseconds.
+     * @param task        - the task, should be short.
+     * @return            - a handle to cancel the task.
+     */
+    public Timeout schedule(long delayMillis, Runnable task) {
+        long deadlineNanos = clock.getAsLong() - startNanos + Math.max(delayMillis, 0) * TICK_NANOS;
+        Timeout timeout = new Timeout((deadlineNanos + TICK_NANOS - 1) / TICK_NANOS, task);
+        pending.add(timeout);
+        LockSupport.unpark(thread);
+        return timeout;
+    }
+
+    @Override
+    public void run() {
+        while (!stopped) {
+            long sleepNanos = runDue();
+            if (sleepNanos < 0) LockSupport.park(this);
+            else if (sleepNanos > 0) LockSupport.parkNanos(this, sleepNanos);
+        }
+        ThreadLogger.logStop(logger, Thread.currentThread().getName());
+    }
+
+    /**
+     * Adds the pending timeouts to the wheel and runs the tasks that are due by now.
+     *
+     * @return - the time until the nearest occupied bucket in nanoseconds, or -1 if nothing is scheduled.
+     */
+    long runDue() {
+        long now = currentTick();
+        for (Timeout timeout = pending.poll(); timeout != null; timeout = pending.poll()) {
+            if (timeout.deadlineTick <= lastTick) { // its bucket was already visited
+                expire(timeout);
+            } else { // including the ones that are due by now, so the buckets below expire them in deadline order
+                int bucket = (int) (timeout.deadlineTick & MASK);
+                timeout.next = wheel[bucket];
+                wheel[bucket] = timeout;
+                scheduled++;
+            }
+        }
+
+        // each bucket is visited at most once, even if we overslept a whole turn of the wheel
+        for (long tick = Math.max(lastTick + 1, now - MASK); tick <= now; tick++)
+            expireBucket((int) (tick & MASK), now);
+        lastTick = now;
+
+        if (scheduled == 0) return -1;
+        return Math.max(0, (nextOccupiedTick() * TICK_NANOS) - (clock.getAsLong() - startNanos));
+    }
+
+    private long currentTick() {
+        return (clock.getAsLong() - startNanos) / TICK_NANOS;
+    }
+
+    private void expireBucket(int bucket, long now) {
+        Timeout previous = null;
+        Timeout timeout = wheel[bucket];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.deadlineTick <= now || timeout.cancelled) {
+                if (previous == null) wheel[bucket] = next;
+                else previous.next = next;
+                timeout.next = null;
+                scheduled--;
+                expire(timeout);
+            } else {
+                previous = timeout;
+            }
+            timeout = next;
+        }
+    }
+
+    private void expire(Timeout timeout) {
+        if (timeout.cancelled) return;
+        try {
+            timeout.task.run();
+        } catch (RuntimeException e) {
+            logger.severe("timer task failed: " + e);
+        }
+    }
+
+    /**
+     * @return - the tick of the nearest occupied bucket (its timeouts may belong to a later turn of the wheel).
+     */
+    private long nextOccupiedTick() {
+        for (int i = 1; i <= WHEEL_SIZE; i++)
+            if (wheel[(int) ((lastTick + i) & MASK)] != null)
+                return lastTick + i;
+        return lastTick + WHEEL_SIZE;
+    }
+}
@@ -0,0 +1,123 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GameLogTest {
+
+    @TempDir
+    Path directory;
+
+    Logger logger;
+    Path path;
+
+    @BeforeEach
+    void setUp() {
+        logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.setLevel(Level.INFO);
+        path = directory.resolve("game.log");
+    }
+
+    private GameLog start(int capacity) {
+        GameLog log = new GameLog(logger, path, capacity);
+        log.startWriter();
+        return log;
+    }
+
+    private List<String> lines(Path file) throws IOException {
+        return Files.readAllLines(file, StandardCharsets.UTF_8);
+    }
+
+    private static String message(String line) {
+        return line.substring(line.indexOf("] ", line.indexOf("] ") + 2) + 2);
+    }
+
+    @Test
+    void log_SubstitutesArguments() throws IOException {
+        GameLog log = start(8);
+        log.log(Level.INFO, "no arguments {}");
+        log.log(Level.INFO, "player {} scored {}", 3, 12);
+        log.log(Level.INFO, "{}{} and {} extra {}", 1, 2, 3);
+        log.log(Level.FINE, "not logged {}", 1);
+        log.flush();
+
+        List<String> lines = lines(path);
+        assertEquals(3, lines.size());
+        assertEquals("no arguments {}", message(lines.get(0)));
+        assertEquals("player 3 scored 12", message(lines.get(1)));
+        assertEquals("12 and 3 extra {}", message(lines.get(2)));
+        assertTrue(lines.get(1).contains("[INFO   ]"));
+    }
+
+    @Test
+    void log_CountsDroppedEventsWhenRingIsFull() throws IOException {
+        GameLog log = new GameLog(logger, path, 4); // the writer is not running yet, so the ring fills up
+        for (int i = 0; i < 7; i++)
+            log.log(Level.INFO, "event {}", i);
+        log.startWriter();
+        log.flush();
+
+        List<String> lines = lines(path);
+        assertEquals(5, lines.size());
+        assertEquals("event 0", message(lines.get(0)));
+        assertEquals("dropped 3 log events (log ring full)", message(lines.get(1)));
+        assertTrue(lines.get(1).contains("[WARNING]"));
+        assertEquals("event 1", message(lines.get(2)));
+        assertEquals("event 3", message(lines.get(4)));
+
+        log.log(Level.INFO, "event {}", 7); // the count was reported, and starts again from 0
+        log.flush();
+        lines = lines(path);
+        assertEquals(6, lines.size());
+        assertEquals("event 7", message(lines.get(5)));
+    }
+
+    @Test
+    void rotation_CountOneTruncates() throws IOException {
+        GameLog log = start(16);
+        log.setRotation(60, 1);
+        log.log(Level.INFO, "a line that is longer than the rotation size by itself");
+        log.flush();
+        assertTrue(Files.exists(path));
+        assertEquals(0, Files.size(path));
+
+        log.log(Level.INFO, "short");
+        log.flush();
+        List<String> lines = lines(path);
+        assertEquals(1, lines.size());
+        assertEquals("short", message(lines.get(0)));
+        assertFalse(Files.exists(directory.resolve("game.log.1")));
+    }
+
+    @Test
+    void rotation_KeepsCountFiles() throws IOException {
+        GameLog log = start(16);
+        log.setRotation(60, 3);
+        for (int file = 1; file <= 3; file++) { // each line fills a file
+            log.log(Level.INFO, "a line that is longer than the rotation size, file {}", file);
+            log.flush();
+        }
+
+        assertEquals(0, Files.size(path));
+        List<String> newest = lines(directory.resolve("game.log.1"));
+        List<String> oldest = lines(directory.resolve("game.log.2"));
+        assertEquals(1, newest.size());
+        assertEquals("a line that is longer than the rotation size, file 3", message(newest.get(0)));
+        assertEquals("a line that is longer than the rotation size, file 2", message(oldest.get(0)));
+        assertFalse(Files.exists(directory.resolve("game.log.3")));
+    }
+}
@@ -0,0 +1,159 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserInterfaceRecorderTest {
+
+    @TempDir
+    Path directory;
+
+    Logger logger;
+    Config config;
+    Path path;
+
+    @BeforeEach
+    void setUp() {
+        logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        config = new Config(logger, new Properties());
+        path = directory.resolve("game.rec");
+    }
+
+    @Test
+    void replay_CallsTheRecordedCalls() throws IOException, InterruptedException {
+        UserInterfaceRecorder recorder = new UserInterfaceRecorder(logger, config, path);
+        recorder.placeCard(17, 3);
+        recorder.placeToken(1, 3);
+        recorder.removeToken(1, 3);
+        recorder.removeTokens(3);
+        recorder.removeTokens();
+        recorder.removeCard(3);
+        recorder.setCountdown(5999, true);
+        recorder.setElapsed(1234);
+        long deadline = System.currentTimeMillis() + 60000;
+        long elapsedStart = System.currentTimeMillis() - 30000;
+        recorder.setCountdownDeadline(deadline, 5000);
+        recorder.setElapsedSince(elapsedStart);
+        recorder.setFreeze(0, 3000);
+        recorder.setScore(1, 2);
+        recorder.announceWinner(new int[]{0, 1});
+        recorder.dispose();
+
+        CallsUserInterface calls = new CallsUserInterface();
+        long recordedStart, playedFrom, playedTo;
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            UserInterfaceReplay replay = new UserInterfaceReplay(file);
+            recordedStart = replay.readHeader(config);
+            playedFrom = System.currentTimeMillis();
+            replay.play(calls, 1000);
+            playedTo = System.currentTimeMillis();
+        }
+
+        assertEquals(Arrays.asList("placeCard 17 3", "placeToken 1 3", "removeToken 1 3", "removeTokens 3",
+                "removeTokens", "removeCard 3", "setCountdown 5999 true", "setElapsed 1234", "setCountdownDeadline 5000",
+                "setElapsedSince", "setFreeze 0 3000", "setScore 1 2", "announceWinner [0, 1]"), calls.calls);
+        // the times are replayed relative to the start of the replay, 1000 times faster
+        assertBetween(playedFrom + (deadline - recordedStart) / 1000, playedTo + (deadline - recordedStart) / 1000,
+                calls.deadline);
+        assertBetween(playedFrom + (elapsedStart - recordedStart) / 1000, playedTo + (elapsedStart - recordedStart) / 1000,
+                calls.elapsedStart);
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        assertTrue(actual >= min && actual <= max, actual + " is not in [" + min + ", " + max + "]");
+    }
+
+    static class CallsUserInterface implements UserInterface {
+
+        final List<String> calls = new ArrayList<>();
+        long deadline;
+        long elapsedStart;
+
+        @Override
+        public void placeCard(int card, int slot) {
+            calls.add("placeCard " + card + " " + slot);
+        }
+
+        @Override
+        public void removeCard(int slot) {
+            calls.add("removeCard " + slot);
+        }
+
+        @Override
+        public void placeToken(int player, int slot) {
+            calls.add("placeToken " + player + " " + slot);
+        }
+
+        @Override
+        public void removeTokens() {
+            calls.add("removeTokens");
+        }
+
+        @Override
+        public void removeTokens(int slot) {
+            calls.add("removeTokens " + slot);
+        }
+
+        @Override
+        public void removeToken(int player, int slot) {
+            calls.add("removeToken " + player + " " + slot);
+        }
+
+        @Override
+        public void setCountdown(long millies, boolean warn) {
+            calls.add("setCountdown " + millies + " " + warn);
+        }
+
+        @Override
+        public void setElapsed(long millies) {
+            calls.add("setElapsed " + millies);
+        }
+
+        @Override
+        public void setCountdownDeadline(long deadline, long warnMillis) {
+            calls.add("setCountdownDeadline " + warnMillis);
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void setElapsedSince(long start) {
+            calls.add("setElapsedSince");
+            this.elapsedStart = start;
+        }
+
+        @Override
+        public void setFreeze(int player, long millies) {
+            calls.add("setFreeze " + player + " " + millies);
+        }
+
+        @Override
+        public void setScore(int player, int score) {
+            calls.add("setScore " + player + " " + score);
+        }
+
+        @Override
+        public void announceWinner(int[] players) {
+            calls.add("announceWinner " + Arrays.toString(players));
+        }
+
+        @Override
+        public void dispose() {
+            calls.add("dispose");
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntRingBufferTest {
+
+    IntRingBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        buffer = new IntRingBuffer(3);
+    }
+
+    @Test
+    void offer_KeepsCapacityAndOrder() {
+        assertTrue(buffer.offer(4));
+        assertTrue(buffer.offer(7));
+        assertTrue(buffer.offer(1));
+        assertFalse(buffer.offer(2));
+
+        assertEquals(4, buffer.poll());
+        assertTrue(buffer.offer(2));
+        assertEquals(7, buffer.poll());
+        assertEquals(1, buffer.poll());
+        assertEquals(2, buffer.poll());
+        assertEquals(IntRingBuffer.EMPTY, buffer.poll());
+    }
+
+    @Test
+    void drainTo_TakesEverything() {
+        buffer.offer(5);
+        buffer.offer(6);
+        int[] into = new int[3];
+
+        assertEquals(2, buffer.drainTo(into));
+        assertEquals(5, into[0]);
+        assertEquals(6, into[1]);
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    void clear_RemovesEverything() {
+        buffer.offer(5);
+        buffer.offer(6);
+        buffer.clear();
+
+        assertTrue(buffer.isEmpty());
+        assertEquals(IntRingBuffer.EMPTY, buffer.poll());
+    }
+
+    @Test
+    void offerDropOldest_DropsTheOldestWhenFull() {
+        assertFalse(buffer.offerDropOldest(1));
+        buffer.offer(2);
+        buffer.offer(3);
+
+        assertTrue(buffer.offerDropOldest(4));
+        assertFalse(buffer.contains(1));
+        assertTrue(buffer.contains(4));
+        assertEquals(2, buffer.poll());
+        assertEquals(3, buffer.poll());
+        assertEquals(4, buffer.poll());
+    }
+
+    @Test
+    void put_WaitsUntilConsumerTakes() throws InterruptedException {
+        buffer.offer(1);
+        buffer.offer(2);
+        buffer.offer(3);
+        Thread producer = new Thread(() -> {
+            try {
+                buffer.put(4);
+            } catch (InterruptedException ignored) {}
+        });
+        producer.start();
+
+        buffer.awaitNotEmpty(() -> false);
+        assertEquals(1, buffer.poll());
+        producer.join(1000);
+        assertFalse(producer.isAlive());
+        assertEquals(3, buffer.size());
+    }
+}
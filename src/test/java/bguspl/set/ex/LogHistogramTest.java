@@ -0,0 +1,31 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogHistogramTest {
+
+    @Test
+    void bucketOf_MatchesUpperBound() {
+        for (long value : new long[]{0, 1, 7, 8, 9, 15, 16, 1000, 123456789, Long.MAX_VALUE}) {
+            int bucket = LogHistogram.bucketOf(value);
+            assertTrue(value <= LogHistogram.upperBound(bucket));
+            assertTrue(bucket == 0 || value > LogHistogram.upperBound(bucket - 1));
+        }
+    }
+
+    @Test
+    void percentile_WithinOneBucket() {
+        LogHistogram histogram = new LogHistogram();
+        for (long value = 1; value <= 1000; value++)
+            histogram.record(value * 1000);
+
+        assertEquals(1000, histogram.count());
+        assertEquals(1000000, histogram.max());
+        long median = histogram.percentile(50);
+        assertTrue(median >= 500000 && median <= 500000 * 9 / 8, "median " + median);
+        assertEquals(1000000, histogram.percentile(100));
+    }
+}
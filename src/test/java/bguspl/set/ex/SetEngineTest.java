@@ -0,0 +1,96 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SetEngineTest {
+
+    SetEngine engine;
+    UtilImpl util;
+
+    @BeforeEach
+    void setUp() {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "4");
+        Config config = new Config(new TableTest.MockLogger(), properties);
+        engine = new SetEngine(config);
+        util = new UtilImpl(config);
+    }
+
+    @Test
+    void completion_MatchesUtilTestSet() {
+        int[] pair = new int[2];
+        for (int a = 0; a < 81; a++)
+            for (int b = a + 1; b < 81; b++) {
+                pair[0] = a;
+                pair[1] = b;
+                int c = engine.completion(pair, 2);
+                assertTrue(util.testSet(new int[]{a, b, c}));
+            }
+    }
+
+    @Test
+    void findSet_NoSet() {
+        // 0000, 0001, 0010, 0011 - no three of them form a set
+        assertNull(engine.findSet(Arrays.asList(0, 1, 3, 4)));
+    }
+
+    @Test
+    void findSet_UsesAtMostMaxSecondary() {
+        List<Integer> table = Arrays.asList(0, 1, 3, 4);
+        List<Integer> deck = Arrays.asList(2, 40, 80);
+
+        // 0000, 0001, 0002 needs only one card from the deck
+        int[] set = engine.findSet(table, deck, 1);
+        assertNotNull(set);
+        assertTrue(util.testSet(set));
+        assertEquals(1, Arrays.stream(set).filter(deck::contains).count());
+
+        assertNull(engine.findSet(table, deck, 0));
+    }
+
+    @Test
+    void findSet_ReusedSearchStartsClean() {
+        SetEngine.Search search = engine.newSearch();
+        int[] set = engine.findSet(new int[]{0, 1, 2, 3}, 4, Long.MAX_VALUE, search);
+        assertNotNull(set);
+        assertTrue(util.testSet(set));
+
+        // 2 was available in the previous search only, it must not complete 0 and 1 now
+        assertNull(engine.findSet(new int[]{0, 1, 3, 4}, 4, Long.MAX_VALUE, search));
+    }
+
+    @Test
+    void findSet_FeatureSizeTwo() {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", "2");
+        properties.put("FeatureCount", "4");
+        Config config = new Config(new TableTest.MockLogger(), properties);
+        SetEngine engine = new SetEngine(config);
+        UtilImpl util = new UtilImpl(config);
+
+        // any two distinct cards are a set, not only the complementary ones
+        assertEquals(SetEngine.NONE, engine.completion(new int[]{0}, 1));
+        int[] set = engine.findSet(Arrays.asList(0, 1));
+        assertNotNull(set);
+        assertTrue(util.testSet(set));
+
+        set = engine.findSet(Arrays.asList(3), Arrays.asList(5, 9), 1);
+        assertNotNull(set);
+        assertTrue(util.testSet(set));
+        assertEquals(3, set[0]);
+        assertNull(engine.findSet(Arrays.asList(3), Arrays.asList(5, 9), 0));
+    }
+}
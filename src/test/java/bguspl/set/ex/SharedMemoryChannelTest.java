@@ -0,0 +1,56 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SharedMemoryChannelTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void snapshotAndPresses_CrossTheFile() throws IOException {
+        Path file = dir.resolve("players.shm");
+        try (SharedMemoryChannel game = SharedMemoryChannel.create(file, 2, 2, 12, 4);
+             SharedMemoryChannel bot = SharedMemoryChannel.open(file)) {
+            assertNotNull(bot);
+            assertEquals(2, bot.firstPlayer());
+            assertEquals(2, bot.players());
+            assertEquals(12, bot.tableSize());
+
+            int[] slotToCard = {5, 6, 7, Table.NO_CARD, 9, 10, 11, 12, 13, 14, 15, 16};
+            long[][] tokens = {{0b101}, {0}};
+            game.publish(slotToCard, new boolean[]{true, false}, tokens);
+
+            int[] readCards = new int[12];
+            boolean[] readCanAct = new boolean[2];
+            long[][] readTokens = new long[2][1];
+            long sequence = bot.readSnapshot(readCards, readCanAct, readTokens);
+            assertEquals(game.snapshotSequence(), sequence);
+            assertArrayEquals(slotToCard, readCards);
+            assertTrue(readCanAct[0]);
+            assertFalse(readCanAct[1]);
+            assertEquals(0b101, readTokens[0][0]);
+
+            for (int slot = 0; slot < 4; slot++)
+                assertTrue(bot.offerPress(1, slot));
+            assertFalse(bot.offerPress(1, 4));
+            assertEquals(SharedMemoryChannel.EMPTY, game.pollPress(0));
+            assertEquals(0, game.pollPress(1));
+            assertTrue(bot.offerPress(1, 4));
+
+            assertFalse(bot.isGameOver());
+            game.setGameOver();
+            assertTrue(bot.isGameOver());
+        }
+    }
+}
@@ -12,6 +12,8 @@ import java.util.Properties;
 import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class TableTest {
 
@@ -95,6 +97,32 @@ class TableTest {
         placeSomeCardsAndAssert();
     }
 
+    @Test
+    void reserveSlots_OverlappingSetLoses() {
+        fillAllSlots();
+        assertTrue(table.reserveSlots(0, new int[]{0, 1, 2}));
+        assertFalse(table.reserveSlots(1, new int[]{3, 2, 1}));
+
+        // the losing set did not keep any of its slots
+        assertTrue(table.reserveSlots(1, new int[]{3}));
+    }
+
+    @Test
+    void releaseSlots_SlotsCanBeReservedAgain() {
+        fillAllSlots();
+        assertTrue(table.reserveSlots(0, new int[]{0, 1, 2}));
+        table.releaseSlots(0);
+        assertTrue(table.reserveSlots(1, new int[]{2, 1, 0}));
+    }
+
+    @Test
+    void removeCard_ReleasesReservedSlot() {
+        fillAllSlots();
+        assertTrue(table.reserveSlots(0, new int[]{0, 1, 2}));
+        table.placeCard(8, 2);
+        assertTrue(table.reserveSlots(1, new int[]{2}));
+    }
+
     static class MockUserInterface implements UserInterface {
         @Override
         public void dispose() {}
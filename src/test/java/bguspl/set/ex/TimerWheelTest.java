@@ -0,0 +1,71 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TimerWheelTest {
+
+    long nowNanos;
+    TimerWheel wheel;
+    List<Integer> ran;
+
+    @BeforeEach
+    void setUp() {
+        nowNanos = 0;
+        wheel = new TimerWheel(new TableTest.MockLogger(), () -> nowNanos);
+        ran = new ArrayList<>();
+    }
+
+    void advanceTo(long millis) {
+        nowNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+        wheel.runDue();
+    }
+
+    @Test
+    void schedule_RunsInDeadlineOrderAndNotEarly() {
+        for (int delay : new int[]{30, 10, 20})
+            wheel.schedule(delay, () -> ran.add(delay));
+
+        advanceTo(9);
+        assertEquals(Arrays.asList(), ran);
+        advanceTo(20);
+        assertEquals(Arrays.asList(10, 20), ran);
+        advanceTo(30);
+        assertEquals(Arrays.asList(10, 20, 30), ran);
+        assertEquals(-1, wheel.runDue());
+    }
+
+    @Test
+    void schedule_LateTimeoutsRunInDeadlineOrder() {
+        for (int delay : new int[]{30, 10, 20})
+            wheel.schedule(delay, () -> ran.add(delay));
+
+        advanceTo(100); // the wheel overslept all the deadlines
+        assertEquals(Arrays.asList(10, 20, 30), ran);
+    }
+
+    @Test
+    void runDue_ReturnsTimeToNextTimeout() {
+        wheel.schedule(10, () -> ran.add(10));
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), wheel.runDue());
+        advanceTo(4);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(6), wheel.runDue());
+    }
+
+    @Test
+    void cancel_TaskDoesNotRun() {
+        wheel.schedule(100, () -> ran.add(100)).cancel();
+        wheel.schedule(150, () -> ran.add(150));
+
+        advanceTo(150);
+        assertEquals(Arrays.asList(150), ran);
+    }
+}